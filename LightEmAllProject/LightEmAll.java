@@ -1,12 +1,29 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
 import tester.*;
 import javalib.impworld.*;
 import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import javax.imageio.ImageIO;
 import javalib.worldimages.*;
 
 // interface for Constants 
@@ -14,18 +31,26 @@ interface Constants {
   int CELL_SIZE = 50;
   int GAME_HEIGHT = 5;
   int GAME_WIDTH = 5;
+  // the largest window a board is shown in, in pixels
+  int VIEW_WIDTH = 1000;
+  int VIEW_HEIGHT = 700;
+  // the most tiles a world builds its GamePiece view for up front
+  int PIECE_VIEW_LIMIT = 1 << 16;
 }
 
 //LightEmAllWorld
 class LightEmAllWorld extends World {
   // a list of columns of GamePieces,
-  // i.e., represents the board in column-major order
+  // i.e., represents the board in column-major order,
+  // or null for a large board until pieces() builds it
   ArrayList<ArrayList<GamePiece>> board;
   // a list of nodes
   ArrayList<GamePiece> nodes;
   // ArrayList<GamePiece> nodes;
-  // a list of edges of the minimum spanning tree
-  ArrayList<Edge> mst;
+  // the game being played, with no view of its own
+  GameEngine engine;
+  // the engine's board, viewed by the GamePieces above
+  PackedBoard packed;
   // the width and height of the board
   int width;
   int height;
@@ -34,78 +59,126 @@ class LightEmAllWorld extends World {
   int powerRow;
   int powerCol;
   int radius;
-  Random rand;
-  Utils u = new Utils();
+  // the seed and size this board was generated from
+  BoardId id;
+  // the engine's propagator, which logs the cells each move changed
+  IncrementalPropagator propagator;
+  // the part of the board in the window
+  Camera camera;
+  // the image of every tile state
+  TileSprites sprites = new TileSprites(Constants.CELL_SIZE);
+  // the board's image, repainted only where it changed, or null to place
+  // every sprite each frame instead
+  RetainedScene retained;
+  // answers the h key
+  HintEngine hints;
+  // the last hint shown, as HintEngine.hint gives it, or -1
+  int hint = -1;
+  // the clicks and keys since the last tick, as GameEngine.apply takes
+  // them, and how many there are
+  int[] pending = new int[16];
+  int pendingCount;
+  // the turns clicked on each cell since the last station move, with 4
+  // added once the cell is listed in clicked
+  byte[] turns;
+  int[] clicked = new int[16];
+  int clickedCount;
+
+  // Constructor, playing the given board
+  LightEmAllWorld(PackedBoard packed, BoardId id) {
+    this(new GameEngine(packed, id));
+  }
+
+  // Constructor, playing the board of the given engine
+  LightEmAllWorld(GameEngine engine) {
+    this.id = engine.id;
+    this.width = this.id.width;
+    this.height = this.id.height;
+    this.engine = engine;
+    this.packed = this.engine.board;
+    this.propagator = this.engine.propagator;
+    if (this.packed.cells.length <= Constants.PIECE_VIEW_LIMIT) {
+      this.pieces();
+    }
+    this.camera = new Camera(this.width, this.height,
+        Math.min(this.width * Constants.CELL_SIZE, Constants.VIEW_WIDTH),
+        Math.min(this.height * Constants.CELL_SIZE, Constants.VIEW_HEIGHT), Constants.CELL_SIZE);
+    this.retained = new RetainedScene(this.packed, this.camera);
+    this.hints = new HintEngine(this.engine);
+    this.turns = new byte[this.packed.cells.length];
+    this.updateStation();
+    this.radius = this.engine.radius();
+
+  }
 
   // Constructor
-  LightEmAllWorld(int width, int height, Random rand) {
-    this.width = width;
-    this.height = height;
-    this.rand = rand;
-    this.board = new Utils().initializeBoard(width, height);
+  LightEmAllWorld(BoardId id, BoardGenerator generator) {
+    this(id.generate(generator), id);
+  }
 
-    Union unionHolder = new Union(new Utils().createEdges(board, width, height));
-    u.updateGamePieces(unionHolder.kruskalAlgo());
-    this.nodes = u.assignNodes(this.board);
-    u.randomizeNodes(this.nodes, rand);
-    u.lightUp(board, width, height, nodes);
-    this.mst = null;
-    this.powerRow = 1;
-    this.powerCol = 1;
-    radius = 0;
+  // Constructor, loading a saved board
+  LightEmAllWorld(BoardFile file) throws IOException {
+    this(file.loadEngine());
+  }
 
+  // Constructor
+  LightEmAllWorld(BoardId id) {
+    this(id, new KruskalGenerator());
   }
 
   // Constructor
-  LightEmAllWorld(int width, int height) {
-    this.width = width;
-    this.height = height;
-    this.rand = new Random();
-    this.board = u.initializeBoard(width, height);
-    Union unionHolder = new Union(new Utils().createEdges(board, width, height));
-    u.updateGamePieces(unionHolder.kruskalAlgo());
-    this.nodes = u.assignNodes(this.board);
-    u.randomizeNodes(this.nodes, rand);
-    u.lightUp(board, width, height, nodes);
-    this.mst = null;
-    this.powerRow = 1;
-    this.powerCol = 1;
-    radius = 0;
+  LightEmAllWorld(int width, int height, Random rand) {
+    this(new BoardId(rand.nextLong(), width, height));
+  }
 
+  // Constructor
+  LightEmAllWorld(int width, int height) {
+    this(width, height, new Random());
   }
 
-  // Draws the world
+  // Draws the part of the world in the camera, from the retained image when
+  // there is one, or else placing the cached sprite of each visible cell
   public WorldScene makeScene() {
+    this.flush();
     WorldScene scene = this.getEmptyScene();
-    WorldImage finalImage = new EmptyImage();
-
-    for (ArrayList<GamePiece> colList : this.board) {
-      WorldImage columnImage = colList.get(0).tileImage(Constants.CELL_SIZE,
-          Constants.CELL_SIZE / 4, colList.get(0).poweredColor(), colList.get(0).powerStation);
-
-      // Stack images from column vertically
-      for (int i = 1; i < colList.size(); i++) {
-        columnImage = new AboveImage(columnImage, colList.get(i).tileImage(Constants.CELL_SIZE,
-            Constants.CELL_SIZE / 4, colList.get(i).poweredColor(), colList.get(i).powerStation));
+    Camera view = this.camera;
+    if (this.retained != null) {
+      scene.placeImageXY(this.retained.present(), view.viewWidth / 2, view.viewHeight / 2);
+    }
+    else {
+      if (this.sprites.size != view.cellSize) {
+        this.sprites = new TileSprites(view.cellSize);
+      }
+      int half = view.cellSize / 2;
+      for (int col = view.firstColumn(); col < view.lastColumn(); col++) {
+        for (int row = view.firstRow(); row < view.lastRow(); row++) {
+          scene.placeImageXY(this.sprites.sprite(this.packed.cells[this.packed.index(col, row)]),
+              view.screenX(col) + half, view.screenY(row) + half);
+        }
       }
-      // Combine column images horizontally
-      finalImage = new BesideImage(finalImage, columnImage);
     }
 
-    // Place the final image in the center of the scene
-    scene.placeImageXY(finalImage, this.width * Constants.CELL_SIZE / 2,
-        this.height * Constants.CELL_SIZE / 2);
+    // outline the hinted tile, with the turns it needs
+    if (this.hint >= 0) {
+      int cell = this.hint >> 2;
+      int half = view.cellSize / 2;
+      WorldImage mark = new OverlayImage(
+          new TextImage(Integer.toString(this.hint & 3), half, FontStyle.BOLD, Color.RED),
+          new RectangleImage(view.cellSize - 2, view.cellSize - 2, OutlineMode.OUTLINE,
+              Color.RED));
+      scene.placeImageXY(mark, view.screenX(cell / this.height) + half,
+          view.screenY(cell % this.height) + half);
+    }
 
     // Check for win condition
-    if (u.win(this.nodes)) {
+    if (this.engine.isSolved()) {
       RectangleImage rec = new RectangleImage(Constants.CELL_SIZE * 2, Constants.CELL_SIZE,
           OutlineMode.SOLID, Color.WHITE);
       TextImage text = new TextImage("You Won", Constants.CELL_SIZE / 3, FontStyle.BOLD,
           Color.GREEN);
       WorldImage last = new OverlayImage(text, rec);
 
-      scene.placeImageXY(last, this.width * Constants.CELL_SIZE / 2,
-          this.height * Constants.CELL_SIZE / 2);
+      scene.placeImageXY(last, view.viewWidth / 2, view.viewHeight / 2);
 
       return scene;
     }
@@ -113,23 +186,139 @@ class LightEmAllWorld extends World {
     return scene;
   }
 
-  // rotates a GamePiece if clicked on
+  // plays the clicks and keys queued since the last tick
+  public void onTick() {
+    this.flush();
+  }
+
+  // queues a rotation of the GamePiece clicked on, if any
   public void onMouseClicked(Posn posn) {
-    int x = posn.x / Constants.CELL_SIZE;
-    int y = posn.y / Constants.CELL_SIZE;
-    GamePiece gp = this.board.get(x).get(y);
-    u.rotate(gp);
-    u.lightUp(this.board, this.width, this.height, this.nodes);
+    int i = this.camera.cellAt(posn.x, posn.y);
+    if (i >= 0) {
+      if (this.turns[i] == 0) {
+        if (this.clickedCount == this.clicked.length) {
+          this.clicked = Arrays.copyOf(this.clicked, 2 * this.clicked.length);
+        }
+        this.clicked[this.clickedCount++] = i;
+      }
+      this.turns[i] = (byte) (((this.turns[i] + 1) & 3) | 4);
+      this.hint = -1;
+    }
   }
 
-  // Key pressed moving the power station
+  // Key pressed moving the power station with the arrows,
+  // or the camera with w, a, s and d, zooming with + and -,
+  // or showing which tile to rotate next with h, or limiting power to the
+  // radius with r
   public void onKeyEvent(String key) {
-    if (key.equals("up") || key.equals("left") || key.equals("down") || key.equals("right")) {
-      if (u.checkIfConnected(key, this.board, this.width, this.height,
-          u.findPowerStation(this.board))) {
-        u.movePowerStation(key, this.board);
+    if (this.camera.onKey(key)) {
+      return;
+    }
+    if (key.equals("h")) {
+      this.flush();
+      this.hint = this.hints.hint();
+      return;
+    }
+    if (key.equals("r")) {
+      this.flush();
+      this.engine.setRadiusMode(!this.engine.radiusMode());
+      if (this.board != null) {
+        this.packed.writeTo(this.board);
+      }
+      return;
+    }
+    int direction = PackedBoard.direction(key);
+    if (direction >= 0) {
+      this.queueClicks();
+      this.queue(GameEngine.stationMove(direction));
+    }
+  }
+
+  // queues the given move
+  void queue(int move) {
+    if (this.pendingCount == this.pending.length) {
+      this.pending = Arrays.copyOf(this.pending, 2 * this.pending.length);
+    }
+    this.pending[this.pendingCount++] = move;
+  }
+
+  // queues the turns clicked since the last station move, each cell's
+  // clicks folded together so that four clicks on a tile cancel out
+  void queueClicks() {
+    for (int k = 0; k < this.clickedCount; k++) {
+      int cell = this.clicked[k];
+      for (int turn = this.turns[cell] & 3; turn > 0; turn--) {
+        this.queue(cell);
+      }
+      this.turns[cell] = 0;
+    }
+    this.clickedCount = 0;
+  }
+
+  // plays the queued moves, each repowering only the region it changes,
+  // and brings the GamePiece view up to date with the cells they changed
+  void flush() {
+    this.queueClicks();
+    for (int k = 0; k < this.pendingCount; k++) {
+      int move = this.pending[k];
+      if (move >= 0) {
+        this.engine.rotate(move);
+        this.syncChanged();
+      }
+      else if (this.engine.moveStation(-1 - move)) {
+        this.syncChanged();
+        this.updateStation();
+      }
+    }
+    this.pendingCount = 0;
+  }
+
+  // copies the cells changed by the last move onto the GamePiece view,
+  // if it has been built
+  void syncChanged() {
+    if (this.nodes == null) {
+      return;
+    }
+    for (int k = 0; k < this.propagator.changedCount; k++) {
+      int i = this.propagator.changed[k];
+      this.packed.writeTo(this.nodes.get(i), i);
+    }
+  }
+
+  // the GamePiece view of the board, built from the packed board the first
+  // time it is needed and kept up to date from then on
+  ArrayList<ArrayList<GamePiece>> pieces() {
+    if (this.board == null) {
+      this.board = this.packed.toPieces();
+      this.nodes = new Utils().assignNodes(this.board);
+    }
+    return this.board;
+  }
+
+  // the edges of the spanning tree the board was generated from, between
+  // the GamePieces of the board, built from the solution each tile keeps
+  ArrayList<Edge> solution() {
+    this.pieces();
+    ArrayList<Edge> edges = new ArrayList<Edge>();
+    for (int i = 0; i < this.packed.cells.length; i++) {
+      int wires = this.packed.solvedWires(i);
+      for (int direction = PackedBoard.EAST; direction <= PackedBoard.DOWN; direction++) {
+        if ((wires & (1 << direction)) != 0) {
+          int n = this.packed.neighbor(i, direction);
+          if (n >= 0) {
+            edges.add(new Edge(this.nodes.get(i), this.nodes.get(n), 0));
+          }
+        }
       }
     }
+    return edges;
+  }
+
+  // records the power station's row and column, counted from one
+  void updateStation() {
+    int station = this.engine.station();
+    this.powerRow = station % this.height + 1;
+    this.powerCol = station / this.height + 1;
   }
 }
 
@@ -255,337 +444,3630 @@ class GamePiece {
   }
 }
 
-//Utilities methods
-class Utils {
-  // Generate a board with the power station at position 1, 1
-  public ArrayList<ArrayList<GamePiece>> initializeBoard(int width, int height) {
-    ArrayList<ArrayList<GamePiece>> gameBoard = new ArrayList<>();
-    boolean isPowerStation = false;
-
-    for (int i = 1; i <= width; i++) {
-      ArrayList<GamePiece> columnList = new ArrayList<>();
-      for (int j = 1; j <= height; j++) {
-        // Place power station at (1, 1)
-        if (i == 1 && j == 1) {
-          isPowerStation = true;
-        }
-        else {
-          isPowerStation = false;
-        }
-        columnList.add(new GamePiece(j, i, false, false, false, false, isPowerStation));
-      }
-
-      gameBoard.add(columnList);
-    }
-
-    return gameBoard;
-  }
+// a packed store of the board, in column-major order: one byte per cell
+// holding its four connection bits, the powered and power station flags, and
+// the clockwise turns that bring it back to its generated (solved) wiring,
+// i.e., cells[col * height + row] with a zero-based row and col
+class PackedBoard {
+  // connection bits, in clockwise order so a rotation is a 4-bit rotate
+  static final int TOP = 1;
+  static final int RIGHT = 2;
+  static final int BOTTOM = 4;
+  static final int LEFT = 8;
+  static final int WIRES = 15;
+  static final int POWERED = 16;
+  static final int STATION = 32;
+  // the two bits counting turns back to the solution
+  static final int SOLVE_SHIFT = 6;
+
+  // directions, where the connection bit of a direction is 1 << direction
+  static final int UP = 0;
+  static final int EAST = 1;
+  static final int DOWN = 2;
+  static final int WEST = 3;
 
-  // Adds GamePieces on the board to a list of Nodes
-  public ArrayList<GamePiece> assignNodes(ArrayList<ArrayList<GamePiece>> list) {
-    ArrayList<GamePiece> nodes = new ArrayList<GamePiece>();
-    for (int i = 0; i < list.size(); i++) {
-      for (int j = 0; j < list.get(i).size(); j++) {
-        nodes.add(list.get(i).get(j));
-      }
-    }
-    return nodes;
-  }
+  int width;
+  int height;
+  byte[] cells;
+  // the cells changed since they were last drawn, or null when not drawn
+  DirtyCells dirty;
+  // where the power station was last seen, or -1
+  int station = -1;
 
-  // Rotating the piece clockwise
-  public void rotate(GamePiece piece) {
-    boolean temp = piece.top;
-    piece.top = piece.left;
-    piece.left = piece.bottom;
-    piece.bottom = piece.right;
-    piece.right = temp;
+  // Constructor
+  PackedBoard(int width, int height) {
+    this.width = width;
+    this.height = height;
+    this.cells = new byte[width * height];
   }
 
-  // Rotates each GamePiece on the board a random number of times
-  public void randomizeNodes(ArrayList<GamePiece> list, Random rand) {
-    for (int i = 0; i < list.size(); i++) {
-      int num = rand.nextInt(25);
-      for (int j = 0; j <= num; j++) {
-        rotate(list.get(i));
+  // Constructor, packing a board of GamePieces
+  PackedBoard(ArrayList<ArrayList<GamePiece>> board, int width, int height) {
+    this(width, height);
+    for (int col = 0; col < width; col++) {
+      for (int row = 0; row < height; row++) {
+        this.cells[this.index(col, row)] = PackedBoard.pack(board.get(col).get(row));
       }
     }
   }
 
-  // Find the power station
-  public GamePiece findPowerStation(ArrayList<ArrayList<GamePiece>> list) {
-    GamePiece powerStationPiece = new GamePiece(3, 3, false, false, false, false, false);
-    for (ArrayList<GamePiece> arrGp : list) {
-      for (GamePiece gp : arrGp) {
-        if (gp.powerStation) {
-          powerStationPiece = gp;
-        }
-      }
+  // the cell byte describing the given GamePiece
+  static byte pack(GamePiece piece) {
+    int cell = 0;
+    if (piece.top) {
+      cell |= TOP;
     }
-    return powerStationPiece;
-  }
-
-  // Check's if a given GamePiece is connected to a surrounding
-  // GamePiece based on the given direction
-  public boolean checkIfConnected(String direction, ArrayList<ArrayList<GamePiece>> list, int width,
-      int height, GamePiece piece) {
-    if (direction.equals("up")) {
-      if (piece.row == 1) {
-        return false;
-      }
-      else {
-        return piece.top && list.get(piece.col - 1).get(piece.row - 2).bottom;
-      }
+    if (piece.right) {
+      cell |= RIGHT;
     }
-    else if (direction.equals("right")) {
-      if (piece.col == width) {
-        return false;
-      }
-      else {
-        return piece.right && list.get(piece.col).get(piece.row - 1).left;
-      }
+    if (piece.bottom) {
+      cell |= BOTTOM;
     }
-    else if (direction.equals("down")) {
-      if (piece.row == height) {
-        return false;
-      }
-      else {
-        return piece.bottom && list.get(piece.col - 1).get(piece.row).top;
-      }
+    if (piece.left) {
+      cell |= LEFT;
     }
-    else if (direction.equals("left")) {
-      if (piece.col == 1) {
-        return false;
-      }
-      else {
-        return piece.left && list.get(piece.col - 2).get(piece.row - 1).right;
-      }
+    if (piece.powered) {
+      cell |= POWERED;
     }
-    else {
-      return false;
+    if (piece.powerStation) {
+      cell |= STATION;
     }
+    return (byte) cell;
   }
 
-  // lights up the piece if supposed to
-  public void lightUp(ArrayList<ArrayList<GamePiece>> list, int width, int height,
-      ArrayList<GamePiece> list2) {
+  // the index of the cell at the given zero-based column and row
+  int index(int col, int row) {
+    return col * this.height + row;
+  }
 
-    ArrayList<GamePiece> alreadySeen = new ArrayList<GamePiece>();
-    ArrayList<GamePiece> workList = new ArrayList<GamePiece>();
-    workList.add(findPowerStation(list));
-    while (workList.size() != 0) {
-      GamePiece gp = new GamePiece(3, 3, false, false, false, false, false);
-      GamePiece next = workList.remove(0);
-      GamePiece top = gp;
-      GamePiece right = gp;
-      GamePiece bottom = gp;
-      GamePiece left = gp;
+  // the connection bits of the given cell
+  int wires(int i) {
+    return this.cells[i] & WIRES;
+  }
 
-      if (next.col != 1) {
-        left = list.get(next.col - 2).get(next.row - 1);
-      }
-      if (next.col != width) {
-        right = list.get(next.col).get(next.row - 1);
-      }
+  boolean isPowered(int i) {
+    return (this.cells[i] & POWERED) != 0;
+  }
 
-      if (next.row != 1) {
-        top = list.get(next.col - 1).get(next.row - 2);
-      }
+  boolean isStation(int i) {
+    return (this.cells[i] & STATION) != 0;
+  }
 
-      if (next.row != height) {
-        bottom = list.get(next.col - 1).get(next.row);
-      }
+  void setPowered(int i, boolean powered) {
+    this.set(i, powered ? this.cells[i] | POWERED : this.cells[i] & ~POWERED);
+  }
 
-      next.powered = true;
-      if (!alreadySeen.contains(top) && checkIfConnected("up", list, width, height, next)) {
-        workList.add(top);
-      }
+  void setStation(int i, boolean station) {
+    this.set(i, station ? this.cells[i] | STATION : this.cells[i] & ~STATION);
+    if (station) {
+      this.station = i;
+    }
+    else if (this.station == i) {
+      this.station = -1;
+    }
+  }
 
-      if (!alreadySeen.contains(right) && checkIfConnected("right", list, width, height, next)) {
-        workList.add(right);
-      }
+  // Rotating the cell clockwise: top to right, right to bottom, and so on
+  void rotate(int i) {
+    this.set(i, PackedBoard.rotated(this.cells[i], 1));
+  }
 
-      if (!alreadySeen.contains(bottom) && checkIfConnected("down", list, width, height, next)) {
-        workList.add(bottom);
-      }
+  // stores a new byte for the given cell, marking it dirty if it changed
+  void set(int i, int cell) {
+    if (this.dirty != null && (byte) cell != this.cells[i]) {
+      this.dirty.mark(i);
+    }
+    this.cells[i] = (byte) cell;
+  }
 
-      if (!alreadySeen.contains(left) && checkIfConnected("left", list, width, height, next)) {
-        workList.add(left);
-      }
+  // the given cell byte rotated clockwise the given number of times,
+  // leaving one fewer turn back to the solution for each
+  static byte rotated(byte cell, int turns) {
+    int wires = cell & WIRES;
+    for (int j = 0; j < turns; j++) {
+      wires = ((wires << 1) | (wires >>> 3)) & WIRES;
+    }
+    int solve = ((cell >> SOLVE_SHIFT) - turns) & 3;
+    return (byte) ((cell & (POWERED | STATION)) | wires | (solve << SOLVE_SHIFT));
+  }
 
-      alreadySeen.add(next);
+  // the clockwise turns that bring the given cell back to its solution
+  int turnsToSolve(int i) {
+    return (this.cells[i] >> SOLVE_SHIFT) & 3;
+  }
 
-      for (GamePiece piece : list2) {
-        if (!(alreadySeen.contains(piece))) {
-          piece.powered = false;
-        }
-      }
+  // the connection bits of the given cell once solved
+  int solvedWires(int i) {
+    return PackedBoard.rotated(this.cells[i], this.turnsToSolve(i)) & WIRES;
+  }
+
+  // makes the given wiring, some turn of the cell's own, its solution
+  void setSolution(int i, int wires) {
+    int turns = 0;
+    int current = this.cells[i] & WIRES;
+    while (current != wires && turns < 3) {
+      current = ((current << 1) | (current >>> 3)) & WIRES;
+      turns++;
     }
+    this.set(i, (this.cells[i] & ~(3 << SOLVE_SHIFT)) | turns << SOLVE_SHIFT);
   }
 
-  // Checks if all of the wires are lit
-  public boolean win(ArrayList<GamePiece> list) {
-    int lightsUp = 0;
-    for (GamePiece piece : list) {
-      if (piece.powered) {
-        lightsUp++;
-      }
+  // the fewest clockwise turns that give the given cell its solved wiring,
+  // which is less than turnsToSolve for a symmetric tile such as a straight
+  int turnsToMatch(int i) {
+    int wires = this.cells[i] & WIRES;
+    int solved = this.solvedWires(i);
+    int turns = 0;
+    while (wires != solved && turns < 3) {
+      wires = ((wires << 1) | (wires >>> 3)) & WIRES;
+      turns++;
     }
-    return lightsUp == list.size();
+    return turns;
   }
 
-  // Moves the power station from one GamePiece to the next
-  public void movePowerStation(String direction, ArrayList<ArrayList<GamePiece>> list) {
-    GamePiece powerStation = new Utils().findPowerStation(list);
-    powerStation.powerStation = false;
+  // Rotates each cell a random number of times, as Utils.randomizeNodes does,
+  // with the turns of each cell depending only on the seed and the cell
+  void randomize(BoardRandom rand) {
+    this.randomize(rand, 0, this.cells.length);
+  }
 
-    if (direction.equals("up")) {
-      list.get(powerStation.col - 1).get(powerStation.row - 2).powerStation = true;
+  // randomize, for the cells from lo to hi - 1 only
+  void randomize(BoardRandom rand, int lo, int hi) {
+    for (int i = lo; i < hi; i++) {
+      int turns = rand.nextInt(BoardRandom.ROTATIONS, i, 4);
+      for (int j = 0; j < turns; j++) {
+        this.rotate(i);
+      }
+    }
+  }
 
+  // links two neighboring cells, as GamePiece.compare does
+  void link(int a, int b) {
+    if (b < a) {
+      int swap = a;
+      a = b;
+      b = swap;
     }
-    else if (direction.equals("right")) {
-      list.get(powerStation.col).get(powerStation.row - 1).powerStation = true;
+    if (b == a + 1 && this.height > 1) {
+      this.cells[a] |= BOTTOM;
+      this.cells[b] |= TOP;
+    }
+    else {
+      this.cells[a] |= RIGHT;
+      this.cells[b] |= LEFT;
+    }
+  }
 
+  // the number of the edge from the given cell in the given direction,
+  // numbered as in GridEdges, assuming the neighbor is on the board
+  int edge(int i, int direction) {
+    if (direction == UP) {
+      return this.edge(i - 1, DOWN);
     }
-    else if (direction.equals("down")) {
-      list.get(powerStation.col - 1).get(powerStation.row).powerStation = true;
+    else if (direction == EAST) {
+      return this.width * (this.height - 1) + i;
+    }
+    else if (direction == DOWN) {
+      return i / this.height * (this.height - 1) + i % this.height;
+    }
+    else {
+      return this.edge(i - this.height, EAST);
+    }
+  }
 
+  // the upper or left end of the given edge, numbered as in GridEdges
+  int edgeFrom(int e) {
+    int vertical = this.width * (this.height - 1);
+    if (e < vertical) {
+      return e / (this.height - 1) * this.height + e % (this.height - 1);
     }
-    else if (direction.equals("left")) {
-      list.get(powerStation.col - 2).get(powerStation.row - 1).powerStation = true;
+    else {
+      return e - vertical;
     }
   }
 
-  // Iterates through each cell,
-  // checking if it can connect to neighboring cells to the right, below, left,
-  // and above
-  public ArrayList<Edge> createEdges(ArrayList<ArrayList<GamePiece>> list, int width, int height) {
+  // the lower or right end of the given edge
+  int edgeTo(int e) {
+    int from = this.edgeFrom(e);
+    return e < this.width * (this.height - 1) ? from + 1 : from + this.height;
+  }
+
+  // the index of the neighbor of the given cell in the given direction,
+  // or -1 if that would be off the board
+  int neighbor(int i, int direction) {
+    if (direction == UP) {
+      return i % this.height == 0 ? -1 : i - 1;
+    }
+    else if (direction == EAST) {
+      return i + this.height < this.cells.length ? i + this.height : -1;
+    }
+    else if (direction == DOWN) {
+      return i % this.height == this.height - 1 ? -1 : i + 1;
+    }
+    else {
+      return i < this.height ? -1 : i - this.height;
+    }
+  }
+
+  // a new table of every cell's neighbors, four to a cell, for the solvers
+  // that look neighbors up far more often than a game does
+  int[] neighborTable() {
+    int[] table = new int[this.cells.length * 4];
+    for (int i = 0; i < this.cells.length; i++) {
+      for (int direction = 0; direction < 4; direction++) {
+        table[i << 2 | direction] = this.neighbor(i, direction);
+      }
+    }
+    return table;
+  }
+
+  // whether the given cell and its neighbor in the given direction
+  // have wires pointing at each other
+  boolean connected(int i, int direction) {
+    int n = this.neighbor(i, direction);
+    return n >= 0 && (this.cells[i] & (1 << direction)) != 0
+        && (this.cells[n] & (1 << ((direction + 2) & 3))) != 0;
+  }
+
+  // the index of the power station, or -1 if there is none. The station is
+  // tracked through setStation, so the board is only scanned when it was
+  // written some other way
+  int findStation() {
+    if (this.station >= 0 && (this.cells[this.station] & STATION) != 0) {
+      return this.station;
+    }
+    for (int i = 0; i < this.cells.length; i++) {
+      if ((this.cells[i] & STATION) != 0) {
+        this.station = i;
+        return i;
+      }
+    }
+    return -1;
+  }
+
+  // the direction named by a key, or -1 if the key is not a direction
+  static int direction(String key) {
+    if (key.equals("up")) {
+      return UP;
+    }
+    else if (key.equals("right")) {
+      return EAST;
+    }
+    else if (key.equals("down")) {
+      return DOWN;
+    }
+    else if (key.equals("left")) {
+      return WEST;
+    }
+    else {
+      return -1;
+    }
+  }
+
+  // copies the state of the given cell onto its GamePiece view
+  void writeTo(GamePiece piece, int i) {
+    int cell = this.cells[i];
+    piece.top = (cell & TOP) != 0;
+    piece.right = (cell & RIGHT) != 0;
+    piece.bottom = (cell & BOTTOM) != 0;
+    piece.left = (cell & LEFT) != 0;
+    piece.powered = (cell & POWERED) != 0;
+    piece.powerStation = (cell & STATION) != 0;
+  }
+
+  // a board of GamePieces viewing this, with one-based rows and columns
+  ArrayList<ArrayList<GamePiece>> toPieces() {
+    ArrayList<ArrayList<GamePiece>> board = new ArrayList<>();
+    for (int col = 0; col < this.width; col++) {
+      ArrayList<GamePiece> columnList = new ArrayList<>();
+      for (int row = 0; row < this.height; row++) {
+        GamePiece piece = new GamePiece(row + 1, col + 1, false, false, false, false, false);
+        this.writeTo(piece, this.index(col, row));
+        columnList.add(piece);
+      }
+      board.add(columnList);
+    }
+    return board;
+  }
+
+  // copies every cell onto the given GamePiece view
+  void writeTo(ArrayList<ArrayList<GamePiece>> board) {
+    for (int col = 0; col < this.width; col++) {
+      ArrayList<GamePiece> columnList = board.get(col);
+      for (int row = 0; row < this.height; row++) {
+        this.writeTo(columnList.get(row), this.index(col, row));
+      }
+    }
+  }
+
+  // copies the powered flag of every GamePiece in the view back into this
+  void readPowered(ArrayList<GamePiece> nodes) {
+    for (int i = 0; i < nodes.size(); i++) {
+      this.setPowered(i, nodes.get(i).powered);
+    }
+  }
+}
+
+// a strategy for recomputing which cells of a packed board are powered
+interface PowerPropagator {
+  // powers every cell connected to the power station, unpowers the rest,
+  // and returns the number of powered cells
+  int propagate(PackedBoard board);
+}
+
+// a breadth-first search out from the power station, visiting every cell
+// at most once and unpowering the unvisited cells once at the end
+class BfsPropagator implements PowerPropagator {
+  // each cell is enqueued at most once, so the queue never wraps
+  int[] queue = new int[0];
+  boolean[] seen = new boolean[0];
+
+  public int propagate(PackedBoard board) {
+    int size = board.cells.length;
+    if (this.queue.length != size) {
+      this.queue = new int[size];
+      this.seen = new boolean[size];
+    }
+    else {
+      Arrays.fill(this.seen, false);
+    }
+
+    int head = 0;
+    int tail = 0;
+    int station = board.findStation();
+    if (station >= 0) {
+      this.seen[station] = true;
+      this.queue[tail++] = station;
+    }
+    while (head < tail) {
+      int next = this.queue[head++];
+      for (int direction = 0; direction < 4; direction++) {
+        if (board.connected(next, direction)) {
+          int n = board.neighbor(next, direction);
+          if (!this.seen[n]) {
+            this.seen[n] = true;
+            this.queue[tail++] = n;
+          }
+        }
+      }
+    }
+
+    for (int i = 0; i < size; i++) {
+      board.setPowered(i, this.seen[i]);
+    }
+    return tail;
+  }
+}
+
+// the original Utils.lightUp run over a GamePiece view of the board,
+// kept as the reference the other propagators are compared against
+class ReferencePropagator implements PowerPropagator {
+  public int propagate(PackedBoard board) {
+    Utils u = new Utils();
+    ArrayList<ArrayList<GamePiece>> view = board.toPieces();
+    ArrayList<GamePiece> nodes = u.assignNodes(view);
+    u.lightUp(view, board.width, board.height, nodes);
+    board.readPowered(nodes);
+
+    int powered = 0;
+    for (GamePiece piece : nodes) {
+      if (piece.powered) {
+        powered++;
+      }
+    }
+    return powered;
+  }
+}
+
+// a propagator that, after a full propagation, keeps the tree of links
+// the power arrived through, so that a single rotation only repowers the
+// region it actually changed: cutting a link unpowers just the part hanging
+// off it, and adding a link floods just the newly reached part
+class IncrementalPropagator implements PowerPropagator {
+  // the direction each powered cell was powered from, or -1 for the station
+  byte[] parent = new byte[0];
+  // the search queue, the cells cut off by the last rotation, and the
+  // cells whose state changed during the last update, possibly more than
+  // once; each grows as a move needs it rather than with the board
+  int[] queue = new int[16];
+  int[] detached = new int[16];
+  int[] changed = new int[16];
+  int changedCount;
+  // the number of powered cells, kept up to date as cells change
+  int powered;
+  // the number of links each powered cell is from the station along the
+  // tree, kept only in radius mode, and the most power may travel, or
+  // Integer.MAX_VALUE for no limit
+  int[] depth = new int[0];
+  int radius = Integer.MAX_VALUE;
+
+  // whether propagate has built the tree for the given board
+  boolean built(PackedBoard board) {
+    return this.parent.length == board.cells.length;
+  }
+
+  // powers the whole board from scratch, recording where power came from.
+  // Any cell may have changed, so nothing is logged in changed
+  public int propagate(PackedBoard board) {
+    int size = board.cells.length;
+    if (this.parent.length != size) {
+      this.parent = new byte[size];
+    }
+    if (this.radius != Integer.MAX_VALUE && this.depth.length != size) {
+      this.depth = new int[size];
+    }
+    else if (this.radius == Integer.MAX_VALUE) {
+      this.depth = new int[0];
+    }
+    this.powered = 0;
+    for (int i = 0; i < size; i++) {
+      board.setPowered(i, false);
+    }
+
+    int station = board.findStation();
+    int count = 0;
+    if (station >= 0) {
+      this.power(board, station, -1);
+      count = this.flood(board, station);
+    }
+    this.changedCount = 0;
+    return count;
+  }
+
+  // rotates the given cell clockwise and repowers the region it affects;
+  // only valid after propagate has been run on the same board
+  void rotate(PackedBoard board, int cell) {
+    this.changedCount = 0;
+    int before = this.links(board, cell);
+    board.rotate(cell);
+    this.log(cell);
+    int after = this.links(board, cell);
+
+    if (board.isPowered(cell)) {
+      // unpower everything that got its power through a cut link
+      int count = 0;
+      int cut = before & ~after;
+      for (int direction = 0; direction < 4; direction++) {
+        if ((cut & (1 << direction)) != 0) {
+          int n = board.neighbor(cell, direction);
+          if (this.parent[cell] == direction && board.isPowered(cell)) {
+            count = this.detach(board, cell, count);
+          }
+          else if (this.parent[n] == ((direction + 2) & 3) && board.isPowered(n)) {
+            count = this.detach(board, n, count);
+          }
+        }
+      }
+
+      // anything cut off that still touches a powered cell is repowered,
+      // with a radius through whichever powered neighbor is nearest
+      for (int k = 0; k < count; k++) {
+        int next = this.detached[k];
+        for (int direction = 0; direction < 4; direction++) {
+          if (board.connected(next, direction)
+              && board.isPowered(board.neighbor(next, direction))) {
+            this.relax(board, next, direction);
+          }
+        }
+      }
+    }
+
+    // the links the rotation added, which may power the cell or, with a
+    // radius, give it a shorter path
+    for (int direction = 0; direction < 4; direction++) {
+      if ((after & (1 << direction)) != 0 && board.isPowered(board.neighbor(cell, direction))) {
+        this.relax(board, cell, direction);
+      }
+    }
+    if (board.isPowered(cell)) {
+      this.flood(board, cell);
+    }
+  }
+
+  // powers the given cell from its powered neighbor in the given direction,
+  // or, with a radius, moves it onto that neighbor if that is a shorter
+  // path, and then floods on from it
+  void relax(PackedBoard board, int cell, int direction) {
+    int from = board.neighbor(cell, direction);
+    if (this.radius != Integer.MAX_VALUE && this.depth[from] >= this.radius) {
+      return;
+    }
+    if (!board.isPowered(cell)) {
+      this.power(board, cell, direction);
+      this.flood(board, cell);
+    }
+    else if (this.radius != Integer.MAX_VALUE && this.depth[from] + 1 < this.depth[cell]) {
+      this.parent[cell] = (byte) direction;
+      this.depth[cell] = this.depth[from] + 1;
+      this.flood(board, cell);
+    }
+  }
+
+  // moves the power station to a connected neighbor, rerooting the tree
+  // the power flows through at the new station. With a radius every depth
+  // changes, so the lit cells are unpowered and lit again from the new
+  // station instead, which touches only the cells within the radius
+  void moveStation(PackedBoard board, int from, int to) {
+    this.changedCount = 0;
+    if (this.radius != Integer.MAX_VALUE) {
+      this.detach(board, from, 0);
+      board.setStation(from, false);
+      board.setStation(to, true);
+      this.power(board, to, -1);
+      this.flood(board, to);
+      return;
+    }
+    board.setStation(from, false);
+    board.setStation(to, true);
+    this.log(from);
+    this.log(to);
+
+    // reverse the path from the new station back to the old one, each
+    // cell on it now powered from the cell it used to power
+    int previous = -1;
+    int next = to;
+    while (next != -1) {
+      int up = this.parent[next];
+      this.parent[next] = (byte) previous;
+      previous = (up + 2) & 3;
+      next = up < 0 ? -1 : board.neighbor(next, up);
+    }
+  }
+
+  // the directions in which the given cell is connected
+  int links(PackedBoard board, int cell) {
+    int links = 0;
+    for (int direction = 0; direction < 4; direction++) {
+      if (board.connected(cell, direction)) {
+        links |= 1 << direction;
+      }
+    }
+    return links;
+  }
+
+  // powers the given cell from its neighbor in the given direction, or as
+  // the station for -1
+  void power(PackedBoard board, int cell, int direction) {
+    board.setPowered(cell, true);
+    this.powered++;
+    this.parent[cell] = (byte) direction;
+    if (this.radius != Integer.MAX_VALUE) {
+      this.depth[cell] = direction < 0 ? 0 : this.depth[board.neighbor(cell, direction)] + 1;
+    }
+    this.log(cell);
+  }
+
+  // adds the given cell to the cells changed by this update
+  void log(int cell) {
+    if (this.changedCount == this.changed.length) {
+      this.changed = Arrays.copyOf(this.changed, this.changedCount * 2);
+    }
+    this.changed[this.changedCount++] = cell;
+  }
+
+  // adds the given cell to the search queue at the given tail, returning
+  // the new tail
+  int enqueue(int cell, int tail) {
+    if (tail == this.queue.length) {
+      this.queue = Arrays.copyOf(this.queue, tail * 2);
+    }
+    this.queue[tail] = cell;
+    return tail + 1;
+  }
+
+  // powers every unpowered cell reachable from the given powered cell
+  // within the radius, returning the number of cells powered including the
+  // start. With a radius, powered cells this gives a shorter path are moved
+  // onto it too, so each depth stays the shortest the wires allow
+  int flood(PackedBoard board, int start) {
+    boolean limited = this.radius != Integer.MAX_VALUE;
+    int head = 0;
+    int tail = this.enqueue(start, 0);
+    while (head < tail) {
+      int next = this.queue[head++];
+      for (int direction = 0; direction < 4 && (!limited || this.depth[next] < this.radius);
+          direction++) {
+        if (board.connected(next, direction)) {
+          int n = board.neighbor(next, direction);
+          if (!board.isPowered(n)) {
+            this.power(board, n, (direction + 2) & 3);
+            tail = this.enqueue(n, tail);
+          }
+          else if (limited && this.depth[next] + 1 < this.depth[n]) {
+            this.parent[n] = (byte) ((direction + 2) & 3);
+            this.depth[n] = this.depth[next] + 1;
+            tail = this.enqueue(n, tail);
+          }
+        }
+      }
+    }
+    return tail;
+  }
+
+  // unpowers the given cell and everything powered through it, adding them
+  // to the detached cells after the given count, and returns the new count
+  int detach(PackedBoard board, int root, int count) {
+    int start = count;
+    board.setPowered(root, false);
+    this.powered--;
+    this.log(root);
+    count = this.cut(root, count);
+    for (int k = start; k < count; k++) {
+      int next = this.detached[k];
+      for (int direction = 0; direction < 4; direction++) {
+        int n = board.neighbor(next, direction);
+        if (n >= 0 && this.parent[n] == ((direction + 2) & 3) && board.isPowered(n)) {
+          board.setPowered(n, false);
+          this.powered--;
+          this.log(n);
+          count = this.cut(n, count);
+        }
+      }
+    }
+    return count;
+  }
+
+  // adds the given cell to the detached cells at the given count,
+  // returning the new count
+  int cut(int cell, int count) {
+    if (count == this.detached.length) {
+      this.detached = Arrays.copyOf(this.detached, count * 2);
+    }
+    this.detached[count] = cell;
+    return count + 1;
+  }
+}
+
+// the rules of the game over a PackedBoard, with no GUI: rotating tiles,
+// moving the power station and keeping the board powered. LightEmAllWorld
+// only turns clicks and keys into these moves and draws the result
+class GameEngine {
+  PackedBoard board;
+  BoardId id;
+  // repowers only the region each move affects
+  IncrementalPropagator propagator;
+  // the number of tiles wired as in the solution
+  int solvedTiles;
+  // the fewest rotations that would put every tile back as in the solution
+  int turnsRemaining;
+  // the tiles not wired as in the solution, and where each tile is in
+  // that list, or null until a hint first asks for one
+  int[] unsolved;
+  int[] unsolvedAt;
+  // the most links between two tiles of the solution, and whether the
+  // solution joins every tile, as one that was generated or found does
+  int diameter;
+  boolean spanning;
+
+  // The Constructor, playing the given board
+  GameEngine(PackedBoard board, BoardId id) {
+    this.board = board;
+    this.id = id;
+    this.propagator = new IncrementalPropagator();
+    this.propagator.propagate(board);
+    this.countSolved();
+    this.diameter = this.solutionDiameter();
+  }
+
+  // The Constructor, playing the given board with the counts the given
+  // file saved with it. The board is already powered, so the tree power
+  // flows through is left for the first move to build
+  GameEngine(PackedBoard board, BoardFile file) {
+    this.board = board;
+    this.id = file.id();
+    this.propagator = new IncrementalPropagator();
+    this.propagator.powered = file.powered;
+    this.propagator.radius = file.radius;
+    this.solvedTiles = file.solvedTiles;
+    this.turnsRemaining = file.turnsRemaining;
+    this.diameter = file.diameter;
+    this.spanning = file.spanning;
+  }
+
+  // the diameter of the solution's spanning tree: the farthest tile from
+  // any tile is one end of a longest path, so two searches find it
+  int solutionDiameter() {
+    int[] distance = new int[this.board.cells.length];
+    int[] queue = new int[this.board.cells.length];
+    int end = this.farthest(0, distance, queue);
+    this.spanning = true;
+    for (int i = 0; i < distance.length; i++) {
+      this.spanning = this.spanning && distance[i] >= 0;
+    }
+    return distance[this.farthest(end, distance, queue)];
+  }
+
+  // the tile of the solution farthest from the given one, leaving each
+  // tile's distance from it in distance
+  int farthest(int start, int[] distance, int[] queue) {
+    Arrays.fill(distance, -1);
+    int head = 0;
+    int tail = 0;
+    distance[start] = 0;
+    queue[tail++] = start;
+    while (head < tail) {
+      int next = queue[head++];
+      int wires = this.board.solvedWires(next);
+      for (int direction = 0; direction < 4; direction++) {
+        int n = this.board.neighbor(next, direction);
+        if ((wires & (1 << direction)) != 0 && n >= 0 && distance[n] < 0
+            && (this.board.solvedWires(n) & (1 << ((direction + 2) & 3))) != 0) {
+          distance[n] = distance[next] + 1;
+          queue[tail++] = n;
+        }
+      }
+    }
+    return queue[tail - 1];
+  }
+
+  // the most links power travels from the station in radius mode, enough
+  // to reach every tile of the solution from a station in its middle
+  int radius() {
+    return this.diameter / 2 + 1;
+  }
+
+  // limits power to the radius, or lifts the limit, and repowers the board
+  void setRadiusMode(boolean limited) {
+    this.propagator.radius = limited ? this.radius() : Integer.MAX_VALUE;
+    this.propagator.propagate(this.board);
+  }
+
+  // is power limited to the radius?
+  boolean radiusMode() {
+    return this.propagator.radius != Integer.MAX_VALUE;
+  }
+
+  // counts the tiles wired as in the solution, dropping the list of the
+  // rest until it is next needed
+  void countSolved() {
+    this.solvedTiles = 0;
+    this.turnsRemaining = 0;
+    for (int i = 0; i < this.board.cells.length; i++) {
+      int turns = this.board.turnsToMatch(i);
+      if (turns == 0) {
+        this.solvedTiles++;
+      }
+      this.turnsRemaining += turns;
+    }
+    this.unsolved = null;
+    this.unsolvedAt = null;
+  }
+
+  // lists the tiles not wired as in the solution
+  void listUnsolved() {
+    this.unsolved = new int[this.board.cells.length];
+    this.unsolvedAt = new int[this.board.cells.length];
+    int count = 0;
+    for (int i = 0; i < this.board.cells.length; i++) {
+      if (this.board.turnsToMatch(i) != 0) {
+        this.unsolved[count] = i;
+        this.unsolvedAt[i] = count++;
+      }
+    }
+  }
+
+  // The Constructor, playing the board generated from the given id
+  GameEngine(BoardId id) {
+    this(id.generate(), id);
+  }
+
+  // rotates the tile at the given column and row clockwise, returning
+  // whether there is one
+  boolean rotate(int col, int row) {
+    if (col < 0 || col >= this.board.width || row < 0 || row >= this.board.height) {
+      return false;
+    }
+    this.rotate(this.board.index(col, row));
+    return true;
+  }
+
+  // builds the tree power flows through, if the board was loaded without it
+  void powerTree() {
+    if (!this.propagator.built(this.board)) {
+      this.propagator.propagate(this.board);
+    }
+  }
+
+  // rotates the given cell clockwise
+  void rotate(int cell) {
+    this.powerTree();
+    int before = this.board.turnsToMatch(cell);
+    this.propagator.rotate(this.board, cell);
+    this.track(cell, before);
+  }
+
+  // updates the solved tiles and the unsolved list, if there is one, for
+  // the given cell, which needed the given turns to match the solution
+  // before it rotated
+  void track(int cell, int before) {
+    int after = this.board.turnsToMatch(cell);
+    if (before == 0 && after != 0) {
+      // listed last among the unsolved tiles
+      this.solvedTiles--;
+      int count = this.board.cells.length - this.solvedTiles;
+      if (this.unsolved != null) {
+        this.unsolved[count - 1] = cell;
+        this.unsolvedAt[cell] = count - 1;
+      }
+    }
+    else if (before != 0 && after == 0) {
+      // the last unsolved tile takes its place in the list
+      int count = this.board.cells.length - this.solvedTiles;
+      if (this.unsolved != null) {
+        int last = this.unsolved[count - 1];
+        this.unsolved[this.unsolvedAt[cell]] = last;
+        this.unsolvedAt[last] = this.unsolvedAt[cell];
+      }
+      this.solvedTiles++;
+    }
+    this.turnsRemaining += after - before;
+  }
+
+  // a tile that is not wired as in the solution, or -1 if there is none
+  int unsolvedTile() {
+    int count = this.board.cells.length - this.solvedTiles;
+    if (count > 0 && this.unsolved == null) {
+      this.listUnsolved();
+    }
+    return count == 0 ? -1 : this.unsolved[count - 1];
+  }
+
+  // takes the given wiring of each tile as the solution from now on
+  void adoptSolution(int[] wires) {
+    for (int i = 0; i < wires.length; i++) {
+      this.board.setSolution(i, wires[i]);
+    }
+    this.countSolved();
+    this.diameter = this.solutionDiameter();
+  }
+
+  // the cell of the power station
+  int station() {
+    return this.board.findStation();
+  }
+
+  // moves the power station one tile in the given direction, returning
+  // whether the wires allow it
+  boolean moveStation(int direction) {
+    int station = this.station();
+    if (station < 0 || !this.board.connected(station, direction)) {
+      return false;
+    }
+    this.powerTree();
+    this.propagator.moveStation(this.board, station, this.board.neighbor(station, direction));
+    return true;
+  }
+
+  // the move in a batch that moves the power station in the given
+  // direction; any other move is a cell to rotate clockwise
+  static int stationMove(int direction) {
+    return -1 - direction;
+  }
+
+  // applies the first count of the given moves, then powers the board once
+  // and returns whether it is solved. Moves naming no tile or direction are
+  // skipped, as are station moves the wires do not allow, as rotate and
+  // moveStation would refuse them
+  boolean apply(int[] moves, int count) {
+    int station = this.station();
+    for (int k = 0; k < count; k++) {
+      int move = moves[k];
+      if (move >= 0 && move < this.board.cells.length) {
+        int before = this.board.turnsToMatch(move);
+        this.board.rotate(move);
+        this.track(move, before);
+      }
+      else if (move < 0 && move >= -4 && station >= 0 && this.board.connected(station, -1 - move)) {
+        int next = this.board.neighbor(station, -1 - move);
+        this.board.setStation(station, false);
+        this.board.setStation(next, true);
+        station = next;
+      }
+    }
+    this.propagator.propagate(this.board);
+    return this.isSolved();
+  }
+
+  // the number of powered tiles
+  int poweredCount() {
+    return this.propagator.powered;
+  }
+
+  // the number of tiles
+  int size() {
+    return this.board.cells.length;
+  }
+
+  // is every tile powered?
+  boolean isSolved() {
+    return this.propagator.powered == this.board.cells.length;
+  }
+
+  // is every tile wired as in the solution? That is enough for the board to
+  // be solved, though another wiring may solve it too
+  boolean matchesSolution() {
+    return this.solvedTiles == this.board.cells.length;
+  }
+
+  // a copy of the board's cells, in column-major order
+  byte[] snapshot() {
+    return Arrays.copyOf(this.board.cells, this.board.cells.length);
+  }
+
+  // the number of cells the last move changed, logged in changed()
+  int changedCount() {
+    return this.propagator.changedCount;
+  }
+
+  // the cells the last move changed, possibly more than once
+  int[] changed() {
+    return this.propagator.changed;
+  }
+
+  // rotates each tile clockwise the given number of turns
+  void applyTurns(int[] turns) {
+    for (int i = 0; i < turns.length; i++) {
+      for (int k = 0; k < turns[i]; k++) {
+        this.rotate(i);
+      }
+    }
+  }
+}
+
+// answers hints in constant time from the solution the engine keeps: the
+// tile to rotate next is any tile not yet wired as in the solution. A board
+// whose solution was not kept, such as one packed from GamePieces, looks
+// solved to the engine without being powered; for that a BoardSolver is
+// started in the background on a copy of the board, with a limit on its
+// search, and the solution it finds is adopted on the next hint
+class HintEngine {
+  // the choices the background solver may try
+  static final int BUDGET = 1 << 16;
+
+  GameEngine engine;
+  ForkJoinPool pool;
+  // the wiring of each tile found in the background, once it is found
+  AtomicReference<int[]> found = new AtomicReference<int[]>();
+  HintSearch search;
+
+  // The Constructor
+  HintEngine(GameEngine engine, ForkJoinPool pool) {
+    this.engine = engine;
+    this.pool = pool;
+  }
+
+  // The Constructor, using the common pool
+  HintEngine(GameEngine engine) {
+    this(engine, ForkJoinPool.commonPool());
+  }
+
+  // the tile to rotate next times four plus the clockwise turns it needs,
+  // or -1 when the board is solved or no solution is known yet
+  int hint() {
+    if (this.engine.isSolved()) {
+      return -1;
+    }
+    int[] wires = this.found.getAndSet(null);
+    if (wires != null) {
+      this.engine.adoptSolution(wires);
+    }
+    int cell = this.engine.unsolvedTile();
+    if (cell >= 0) {
+      return cell << 2 | this.engine.board.turnsToMatch(cell);
+    }
+    // wired as a real solution, and dark only for the station's distance in
+    // radius mode: there is no tile to rotate, and nothing to search for
+    if (this.engine.spanning) {
+      return -1;
+    }
+    if (this.search == null || this.search.isDone()) {
+      PackedBoard copy = new PackedBoard(this.engine.board.width, this.engine.board.height);
+      copy.cells = this.engine.snapshot();
+      this.search = new HintSearch(this, copy);
+      this.pool.execute(this.search);
+    }
+    return -1;
+  }
+}
+
+// solves a copy of a board for a HintEngine, within its budget
+class HintSearch extends RecursiveAction {
+  static final long serialVersionUID = 1L;
+
+  HintEngine owner;
+  PackedBoard board;
+
+  // The Constructor
+  HintSearch(HintEngine owner, PackedBoard board) {
+    this.owner = owner;
+    this.board = board;
+  }
+
+  protected void compute() {
+    BoardSolver solver = new BoardSolver();
+    solver.limit = HintEngine.BUDGET;
+    int[] turns = solver.solve(this.board);
+    if (turns != null) {
+      int[] wires = new int[turns.length];
+      for (int i = 0; i < turns.length; i++) {
+        wires[i] = BoardSolver.rotate(this.board.wires(i), turns[i]);
+      }
+      this.owner.found.set(wires);
+    }
+  }
+}
+
+// solves a scrambled board by constraint propagation on its wire masks.
+// Each tile keeps the set of turns it may still take, and a turn survives
+// only if it agrees with what is known of the tile's four edges, points no
+// wire off the board and closes no cycle. Whatever all of a tile's turns
+// agree on decides that edge for its neighbor too. Edges known to be on join
+// tiles into components, and a component with no undecided edge left must
+// be the whole board, so nothing is left dangling or cut off. When that
+// stalls, the search tries each turn left for the undecided tile nearest
+// its last choice, undoing every change through a trail when it fails
+class BoardSolver {
+  // the states of an edge
+  static final int UNKNOWN = 0;
+  static final int ON = 1;
+  static final int OFF = 2;
+  // the arrays the trail restores
+  static final int DOMAIN = 0;
+  static final int EDGE = 1;
+  static final int PARENT = 2;
+  static final int MEMBERS = 3;
+  static final int OPEN = 4;
+  // the tiles around the last choice looked at for the next one
+  static final int NEARBY = 1024;
+
+  int size;
+  int[] neighbors;
+  // the wiring of each tile when solving started
+  int[] wires;
+  // the turns each tile may still take, a bit for each turn
+  int[] domain;
+  // the state of each tile's four edges, four to a tile
+  int[] edge;
+  // a union-find over the tiles joined by edges that are on, by size
+  int[] parent;
+  int[] members;
+  // the undecided edge ends of each component
+  int[] open;
+  int[][] slots;
+  // the tiles whose edges changed since they were last revised
+  int[] queue;
+  boolean[] queued;
+  int head;
+  int queueSize;
+  // the array, index and old value of every change, in order
+  int[] trail = new int[3 * 1024];
+  int trailSize;
+  // the choices being tried: the tile, the turns not yet tried for it, the
+  // trail size before it was chosen and where the scan for choices was
+  int[] branchCell;
+  int[] branchLeft;
+  int[] branchMark;
+  int[] branchScan;
+  // every tile before this one is decided
+  int scan;
+  // the tiles looked at around the last choice, marked with the stamp of
+  // the look they were seen in
+  int[] around = new int[NEARBY];
+  int[] seen;
+  int stamp;
+  // the component of the tile being revised, and of its neighbors across
+  // its undecided edges
+  int cellRoot;
+  int[] roots = new int[4];
+  // the number of choices tried by the last solve
+  int branches;
+  // the choices a search may try before giving up, or 0 for no limit
+  int limit;
+  // the System.nanoTime after which a search gives up, or 0 for no limit
+  long deadline;
+  // whether the last search gave up for its limit or deadline, rather than
+  // running out of choices
+  boolean gaveUp;
+  // which turn of a tile is tried first, varied between searches
+  int order;
+  // set to give up the search, or null
+  AtomicBoolean cancel;
+
+  // The Constructor
+  BoardSolver() {
+  }
+
+  // The Constructor, copying another solver's state to search on from,
+  // with nothing on its trail
+  BoardSolver(BoardSolver other) {
+    this.size = other.size;
+    this.neighbors = other.neighbors;
+    this.wires = Arrays.copyOf(other.wires, this.size);
+    this.domain = Arrays.copyOf(other.domain, this.size);
+    this.edge = Arrays.copyOf(other.edge, this.size * 4);
+    this.parent = Arrays.copyOf(other.parent, this.size);
+    this.members = Arrays.copyOf(other.members, this.size);
+    this.open = Arrays.copyOf(other.open, this.size);
+    this.slots = new int[][] { this.domain, this.edge, this.parent, this.members, this.open };
+    this.queue = Arrays.copyOf(other.queue, this.size);
+    this.queued = Arrays.copyOf(other.queued, this.size);
+    this.head = other.head;
+    this.queueSize = other.queueSize;
+    this.branchCell = new int[this.size];
+    this.branchLeft = new int[this.size];
+    this.branchMark = new int[this.size];
+    this.branchScan = new int[this.size];
+    this.seen = new int[this.size];
+    this.scan = other.scan;
+    this.limit = other.limit;
+    this.deadline = other.deadline;
+    this.order = other.order;
+    this.cancel = other.cancel;
+  }
+
+  // is the deadline past?
+  boolean expired() {
+    return this.deadline != 0 && System.nanoTime() - this.deadline > 0;
+  }
+
+  // the clockwise turns for each tile that solve the given board, where
+  // every tile is powered and no wire is left hanging, or null if there is
+  // no such solution
+  int[] solve(PackedBoard board) {
+    this.reset(board);
+    return this.search();
+  }
+
+  // propagates what is queued and searches from there, returning the turns
+  // found or null if there are none or the search was cancelled
+  int[] search() {
+    this.gaveUp = false;
+    if (!this.propagate()) {
+      return null;
+    }
+    int depth = 0;
+    int cell = -1;
+    while (true) {
+      cell = this.choose(cell);
+      if (cell < 0) {
+        return this.turns();
+      }
+      if (this.cancel != null && this.cancel.get()) {
+        return null;
+      }
+      if (this.limit > 0 && this.branches >= this.limit || this.expired()) {
+        this.gaveUp = true;
+        return null;
+      }
+      this.branchCell[depth] = cell;
+      this.branchLeft[depth] = this.domain[cell];
+      this.branchMark[depth] = this.trailSize;
+      this.branchScan[depth] = this.scan;
+      depth++;
+
+      // take the next turn of the innermost choice that has one left. The
+      // tile of the last choice to run out of turns is kept: if it has no
+      // turn left even before a choice was made, none of that choice's
+      // turns can help, and the search jumps back past it
+      boolean consistent = false;
+      int failed = -1;
+      while (!consistent) {
+        if (depth == 0) {
+          return null;
+        }
+        int left = this.branchLeft[depth - 1];
+        if (left == 0) {
+          depth--;
+          failed = this.branchCell[depth];
+        }
+        else {
+          this.undo(this.branchMark[depth - 1]);
+          this.scan = this.branchScan[depth - 1];
+          if (failed >= 0 && this.dead(failed)) {
+            this.branchLeft[depth - 1] = 0;
+          }
+          else {
+            cell = this.branchCell[depth - 1];
+            int turn = this.firstTurn(left, cell);
+            this.branchLeft[depth - 1] = left & ~turn;
+            this.branches++;
+            failed = -1;
+            this.set(DOMAIN, cell, turn);
+            this.enqueue(cell);
+            consistent = this.propagate();
+          }
+        }
+      }
+    }
+  }
+
+  // starts over on the given board, with every distinct turn of each tile
+  // possible and only the edges off the board decided
+  void reset(PackedBoard board) {
+    int size = board.cells.length;
+    if (this.size != size || this.wires == null) {
+      this.size = size;
+      this.wires = new int[size];
+      this.domain = new int[size];
+      this.edge = new int[size * 4];
+      this.parent = new int[size];
+      this.members = new int[size];
+      this.open = new int[size];
+      this.slots = new int[][] { this.domain, this.edge, this.parent, this.members, this.open };
+      this.queue = new int[size];
+      this.queued = new boolean[size];
+      this.branchCell = new int[size];
+      this.branchLeft = new int[size];
+      this.branchMark = new int[size];
+      this.branchScan = new int[size];
+      this.seen = new int[size];
+    }
+    this.neighbors = board.neighborTable();
+    this.trailSize = 0;
+    this.branches = 0;
+    this.scan = 0;
+    this.head = 0;
+    this.queueSize = 0;
+    for (int i = 0; i < size; i++) {
+      int wires = board.wires(i);
+      this.wires[i] = wires;
+      int turns = 0;
+      int seen = 0;
+      for (int turn = 0; turn < 4; turn++) {
+        int mask = BoardSolver.rotate(wires, turn);
+        if ((seen & (1 << mask)) == 0) {
+          seen |= 1 << mask;
+          turns |= 1 << turn;
+        }
+      }
+      this.domain[i] = turns;
+      this.parent[i] = i;
+      this.members[i] = 1;
+      this.open[i] = 0;
+      for (int direction = 0; direction < 4; direction++) {
+        if (this.neighbors[i << 2 | direction] < 0) {
+          this.edge[i << 2 | direction] = OFF;
+        }
+        else {
+          this.edge[i << 2 | direction] = UNKNOWN;
+          this.open[i]++;
+        }
+      }
+      this.queued[i] = false;
+      this.enqueue(i);
+    }
+  }
+
+  // the given wires turned clockwise the given number of times
+  static int rotate(int wires, int turns) {
+    return ((wires << turns) | (wires >>> (4 - turns))) & PackedBoard.WIRES;
+  }
+
+  // the turn of the given ones to try first for the given tile
+  int firstTurn(int turns, int cell) {
+    int start = (int) (BoardRandom.mix(this.order * 0x9E3779B9L + cell) & 3);
+    for (int k = 0; k < 4; k++) {
+      int turn = 1 << ((start + k) & 3);
+      if ((turns & turn) != 0) {
+        return turn;
+      }
+    }
+    return 0;
+  }
+
+  // does every turn the given tile has left fail as soon as it is tried?
+  boolean dead(int cell) {
+    int left = this.domain[cell];
+    for (int turn = 0; turn < 4; turn++) {
+      if ((left & (1 << turn)) != 0) {
+        int mark = this.trailSize;
+        this.set(DOMAIN, cell, 1 << turn);
+        this.enqueue(cell);
+        boolean consistent = this.propagate();
+        this.undo(mark);
+        if (consistent) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  // revises queued tiles until none is left, returning false as soon as
+  // one has no turn left
+  boolean propagate() {
+    while (this.queueSize > 0) {
+      int cell = this.queue[this.head];
+      this.head = this.head + 1 == this.size ? 0 : this.head + 1;
+      this.queueSize--;
+      this.queued[cell] = false;
+      if (!this.revise(cell)) {
+        while (this.queueSize > 0) {
+          this.queued[this.queue[this.head]] = false;
+          this.head = this.head + 1 == this.size ? 0 : this.head + 1;
+          this.queueSize--;
+        }
+        return false;
+      }
+    }
+    return true;
+  }
+
+  // drops the turns of the given tile that no longer fit, and decides the
+  // edges its remaining turns agree on
+  boolean revise(int cell) {
+    int allowed = 0;
+    int always = PackedBoard.WIRES;
+    int ever = 0;
+    this.cellRoot = this.find(cell);
+    for (int direction = 0; direction < 4; direction++) {
+      if (this.edge[cell << 2 | direction] == UNKNOWN) {
+        this.roots[direction] = this.find(this.neighbors[cell << 2 | direction]);
+      }
+    }
+    for (int turn = 0; turn < 4; turn++) {
+      if ((this.domain[cell] & (1 << turn)) != 0) {
+        int mask = BoardSolver.rotate(this.wires[cell], turn);
+        if (this.fits(cell, mask)) {
+          allowed |= 1 << turn;
+          always &= mask;
+          ever |= mask;
+        }
+      }
+    }
+    if (allowed == 0) {
+      return false;
+    }
+    if (allowed != this.domain[cell]) {
+      this.set(DOMAIN, cell, allowed);
+    }
+    for (int direction = 0; direction < 4; direction++) {
+      if (this.edge[cell << 2 | direction] == UNKNOWN) {
+        if ((always & (1 << direction)) != 0) {
+          if (!this.decide(cell, direction, ON)) {
+            return false;
+          }
+        }
+        else if ((ever & (1 << direction)) == 0) {
+          if (!this.decide(cell, direction, OFF)) {
+            return false;
+          }
+        }
+      }
+    }
+    return true;
+  }
+
+  // can the given tile be wired with the given mask? Not if that breaks a
+  // decided edge, closes a cycle, or leaves the tile's component or one of
+  // its neighbors' with no undecided edge short of the whole board. The
+  // components of the tile and its neighbors are those revise found
+  boolean fits(int cell, int mask) {
+    int open = this.open[this.cellRoot];
+    int members = this.members[this.cellRoot];
+    // the directions whose components the mask joins to the tile's
+    int joined = 0;
+    for (int direction = 0; direction < 4; direction++) {
+      int state = this.edge[cell << 2 | direction];
+      boolean wire = (mask & (1 << direction)) != 0;
+      if (wire ? state == OFF : state == ON) {
+        return false;
+      }
+      if (wire && state == UNKNOWN) {
+        int root = this.roots[direction];
+        if (root == this.cellRoot || this.joins(joined, root)) {
+          return false;
+        }
+        joined |= 1 << direction;
+        open += this.open[root] - 2;
+        members += this.members[root];
+      }
+    }
+    for (int direction = 0; direction < 4; direction++) {
+      if (this.edge[cell << 2 | direction] == UNKNOWN && (mask & (1 << direction)) == 0) {
+        int root = this.roots[direction];
+        open--;
+        if (root == this.cellRoot || this.joins(joined, root)) {
+          open--;
+        }
+        else {
+          // the other ends this mask closes in that component
+          int closed = 0;
+          for (int other = 0; other < 4; other++) {
+            if (this.edge[cell << 2 | other] == UNKNOWN && (mask & (1 << other)) == 0
+                && this.roots[other] == root) {
+              closed++;
+            }
+          }
+          if (this.open[root] == closed && this.members[root] < this.size) {
+            return false;
+          }
+        }
+      }
+    }
+    return open > 0 || members == this.size;
+  }
+
+  // is the given component one of those in the given directions?
+  boolean joins(int directions, int root) {
+    for (int direction = 0; direction < 4; direction++) {
+      if ((directions & (1 << direction)) != 0 && this.roots[direction] == root) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  // decides the edge in the given direction from the given tile, for both
+  // of the tiles it joins, returning false if that leaves a cycle or a
+  // closed component short of the whole board
+  boolean decide(int cell, int direction, int state) {
+    int n = this.neighbors[cell << 2 | direction];
+    this.set(EDGE, cell << 2 | direction, state);
+    this.set(EDGE, n << 2 | ((direction + 2) & 3), state);
+    this.enqueue(n);
+    int a = this.find(cell);
+    int b = this.find(n);
+    if (state == ON) {
+      if (a == b) {
+        return false;
+      }
+      if (this.members[a] < this.members[b]) {
+        int swap = a;
+        a = b;
+        b = swap;
+      }
+      this.set(PARENT, b, a);
+      this.set(MEMBERS, a, this.members[a] + this.members[b]);
+      this.set(OPEN, a, this.open[a] + this.open[b] - 2);
+      return this.alive(a);
+    }
+    else {
+      this.set(OPEN, a, this.open[a] - 1);
+      this.set(OPEN, b, this.open[b] - 1);
+      return this.alive(a) && this.alive(b);
+    }
+  }
+
+  // can the given component still grow into the whole board?
+  boolean alive(int root) {
+    return this.open[root] > 0 || this.members[root] == this.size;
+  }
+
+  // the component of the given tile
+  int find(int cell) {
+    while (this.parent[cell] != cell) {
+      cell = this.parent[cell];
+    }
+    return cell;
+  }
+
+  // the next tile to choose a turn for, or -1 if every tile is decided.
+  // The nearest undecided tile to the last choice comes first, so a wrong
+  // choice is found out before unrelated choices are stacked on top of it;
+  // failing that, the first undecided tile in column-major order
+  int choose(int last) {
+    if (last >= 0) {
+      this.stamp++;
+      int head = 0;
+      int tail = 0;
+      this.around[tail++] = last;
+      this.seen[last] = this.stamp;
+      while (head < tail) {
+        int next = this.around[head++];
+        if (this.undecided(next)) {
+          return next;
+        }
+        for (int direction = 0; direction < 4 && tail < NEARBY; direction++) {
+          int n = this.neighbors[next << 2 | direction];
+          if (n >= 0 && this.seen[n] != this.stamp) {
+            this.seen[n] = this.stamp;
+            this.around[tail++] = n;
+          }
+        }
+      }
+    }
+    while (this.scan < this.size && !this.undecided(this.scan)) {
+      this.scan++;
+    }
+    return this.scan < this.size ? this.scan : -1;
+  }
+
+  // has the given tile more than one turn left?
+  boolean undecided(int cell) {
+    return (this.domain[cell] & (this.domain[cell] - 1)) != 0;
+  }
+
+  // the turn each tile was left with
+  int[] turns() {
+    int[] turns = new int[this.size];
+    for (int i = 0; i < this.size; i++) {
+      turns[i] = Integer.numberOfTrailingZeros(this.domain[i]);
+    }
+    return turns;
+  }
+
+  // revises the given tile later, unless it is already waiting
+  void enqueue(int cell) {
+    if (!this.queued[cell]) {
+      this.queued[cell] = true;
+      int tail = this.head + this.queueSize;
+      this.queue[tail >= this.size ? tail - this.size : tail] = cell;
+      this.queueSize++;
+    }
+  }
+
+  // sets a slot of one of the solver's arrays, remembering its old value
+  void set(int array, int index, int value) {
+    if (this.trailSize + 3 > this.trail.length) {
+      this.trail = Arrays.copyOf(this.trail, this.trail.length * 2);
+    }
+    this.trail[this.trailSize++] = array;
+    this.trail[this.trailSize++] = index;
+    this.trail[this.trailSize++] = this.slots[array][index];
+    this.slots[array][index] = value;
+  }
+
+  // puts back every change made since the trail had the given size
+  void undo(int mark) {
+    while (this.trailSize > mark) {
+      int old = this.trail[--this.trailSize];
+      int index = this.trail[--this.trailSize];
+      int array = this.trail[--this.trailSize];
+      this.slots[array][index] = old;
+    }
+  }
+}
+
+// solves very large boards with a ForkJoinPool. First the turns of every
+// tile are pruned against what its neighbors' turns allow, in regions of
+// whole columns that are each pruned in parallel, in rounds until a round
+// prunes nothing. A BoardSolver then propagates the edges and
+// components from there, and the choices it cannot propagate are searched
+// as forked tasks on copies of its state. The first solution found wins and
+// cancels the rest. With a limit, each forked search gives up after that
+// many choices, and the whole search restarts with twice the limit and other
+// turns tried first, until it finds a solution, proves there is none or
+// runs out of time
+class ParallelBoardSolver {
+  // tiles per task
+  static final int GRAIN = 1 << 14;
+
+  ForkJoinPool pool;
+  // how many choices deep the search forks before going on sequentially
+  int forkDepth;
+  // the solution found by the last solve, if any
+  AtomicReference<int[]> found;
+  AtomicBoolean cancel;
+  // set when a forked search gives up for its limit or the deadline
+  AtomicBoolean gaveUp;
+  // the number of pruning rounds the last solve ran, and of searches
+  int rounds;
+  int restarts;
+  // the choices each forked search may try in the first search, or 0 for
+  // a single search with no limit
+  int limit;
+  // the nanoseconds a solve may take before giving up, or 0 for no limit
+  long timeout;
+
+  // The Constructor
+  ParallelBoardSolver(ForkJoinPool pool) {
+    this.pool = pool;
+    this.forkDepth = 1;
+    while (1 << this.forkDepth < 2 * pool.getParallelism()) {
+      this.forkDepth++;
+    }
+  }
+
+  // The Constructor, using the common pool
+  ParallelBoardSolver() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  // the clockwise turns for each tile that solve the given board, or null
+  // if there is no solution or none was found within the timeout
+  int[] solve(PackedBoard board) {
+    this.found = new AtomicReference<int[]>();
+    this.cancel = new AtomicBoolean();
+    this.gaveUp = new AtomicBoolean();
+    this.restarts = 0;
+    BoardSolver solver = new BoardSolver();
+    solver.deadline = this.timeout > 0 ? System.nanoTime() + this.timeout : 0;
+    solver.cancel = this.cancel;
+    solver.reset(board);
+    if (!this.prune(solver, board.height)) {
+      return null;
+    }
+    do {
+      BoardSolver start = new BoardSolver(solver);
+      start.limit = this.limit << Math.min(this.restarts, 20);
+      start.order = this.restarts << 16;
+      this.gaveUp.set(false);
+      this.restarts++;
+      this.pool.invoke(new SolverBranch(this, start, 0));
+    } while (this.found.get() == null && this.gaveUp.get() && !solver.expired());
+    return this.found.get();
+  }
+
+  // prunes the turns of every tile in parallel rounds until nothing changes,
+  // returning false if a tile is left with no turn
+  boolean prune(BoardSolver solver, int height) {
+    int size = solver.size;
+    SolverMasks masks = new SolverMasks(solver);
+    SolverPrune prune = new SolverPrune(solver, masks, height);
+    masks.invoke(this.pool, size, GRAIN);
+    this.rounds = 0;
+    prune.changed = true;
+    while (prune.changed && !prune.empty && !solver.expired()) {
+      prune.changed = false;
+      prune.invoke(this.pool, size, GRAIN);
+      prune.everything = false;
+      this.rounds++;
+    }
+    return !prune.empty;
+  }
+
+  // records the given solution if it is the first, and stops the search
+  void finish(int[] turns) {
+    if (this.found.compareAndSet(null, turns)) {
+      this.cancel.set(true);
+    }
+  }
+
+  // how many times faster this solves the board of the given id than a
+  // sequential BoardSolver, or 0 if either finds no solution
+  double speedup(BoardId id) {
+    PackedBoard board = id.generate();
+    long start = System.nanoTime();
+    int[] sequential = new BoardSolver().solve(board);
+    long middle = System.nanoTime();
+    int[] parallel = this.solve(board);
+    long end = System.nanoTime();
+    if (sequential == null || parallel == null) {
+      return 0;
+    }
+    return (double) (middle - start) / Math.max(1, end - middle);
+  }
+
+  // prints the speedup over a sequential solve on the common pool for a run
+  // of square boards: size, count and first seed
+  public static void main(String[] args) {
+    int size = Integer.parseInt(args[0]);
+    int count = args.length > 1 ? Integer.parseInt(args[1]) : 5;
+    long first = args.length > 2 ? Long.parseLong(args[2]) : 0;
+    ParallelBoardSolver solver = new ParallelBoardSolver();
+    System.out.println(solver.pool.getParallelism() + " workers");
+    for (int k = 0; k < count; k++) {
+      BoardId id = new BoardId(first + k, size, size);
+      System.out.println("seed " + id.seed + ": " + solver.speedup(id) + "x");
+    }
+  }
+}
+
+// the wires each tile has on in all of its remaining turns, and in any
+class SolverMasks extends ParallelLoop {
+  BoardSolver solver;
+  int[] always;
+  int[] ever;
+
+  // The Constructor
+  SolverMasks(BoardSolver solver) {
+    this.solver = solver;
+    this.always = new int[solver.size];
+    this.ever = new int[solver.size];
+  }
+
+  void run(int lo, int hi) {
+    for (int i = lo; i < hi; i++) {
+      int always = PackedBoard.WIRES;
+      int ever = 0;
+      for (int turn = 0; turn < 4; turn++) {
+        if ((this.solver.domain[i] & (1 << turn)) != 0) {
+          int mask = BoardSolver.rotate(this.solver.wires[i], turn);
+          always &= mask;
+          ever |= mask;
+        }
+      }
+      this.always[i] = always;
+      this.ever[i] = ever;
+    }
+  }
+}
+
+// drops each turn of a tile that some neighbor cannot match, for each
+// region of tiles until nothing in it changes. A region only writes its own
+// tiles, and reads its neighbors' masks as they are; turns are only ever
+// dropped, so a mask read before a neighbor's region changed it still
+// allows everything the neighbor can do
+class SolverPrune extends ParallelLoop {
+  BoardSolver solver;
+  SolverMasks masks;
+  // whether any tile lost a turn, or was left with none, this round
+  boolean changed;
+  boolean empty;
+  // whether every tile is revised, rather than those next to another region
+  boolean everything = true;
+  // the height of the board, so the tiles within it of a region's ends are
+  // the ones next to another region
+  int height;
+
+  // The Constructor
+  SolverPrune(BoardSolver solver, SolverMasks masks, int height) {
+    this.solver = solver;
+    this.masks = masks;
+    this.height = height;
+  }
+
+  void run(int lo, int hi) {
+    int[] neighbors = this.solver.neighbors;
+    int length = hi - lo;
+    int[] queue = new int[length];
+    boolean[] queued = new boolean[length];
+    int head = 0;
+    int count = 0;
+    for (int k = 0; k < length; k++) {
+      if (this.everything || k < this.height || k >= length - this.height) {
+        queue[count++] = lo + k;
+        queued[k] = true;
+      }
+    }
+    while (count > 0) {
+      int i = queue[head];
+      head = head + 1 == length ? 0 : head + 1;
+      count--;
+      queued[i - lo] = false;
+      int allowed = this.allowed(i);
+      if (allowed != this.solver.domain[i]) {
+        this.solver.domain[i] = allowed;
+        this.changed = true;
+        if (allowed == 0) {
+          this.empty = true;
+          return;
+        }
+        this.masks.run(i, i + 1);
+        for (int direction = 0; direction < 4; direction++) {
+          int n = neighbors[i << 2 | direction];
+          if (n >= lo && n < hi && !queued[n - lo]) {
+            queued[n - lo] = true;
+            int tail = head + count;
+            queue[tail >= length ? tail - length : tail] = n;
+            count++;
+          }
+        }
+      }
+    }
+  }
+
+  // the turns of the given tile that every neighbor can match
+  int allowed(int i) {
+    int[] neighbors = this.solver.neighbors;
+    int allowed = 0;
+    for (int turn = 0; turn < 4; turn++) {
+      if ((this.solver.domain[i] & (1 << turn)) != 0) {
+        int mask = BoardSolver.rotate(this.solver.wires[i], turn);
+        boolean fits = true;
+        for (int direction = 0; direction < 4 && fits; direction++) {
+          int n = neighbors[i << 2 | direction];
+          int back = 1 << ((direction + 2) & 3);
+          if ((mask & (1 << direction)) != 0) {
+            fits = n >= 0 && (this.masks.ever[n] & back) != 0;
+          }
+          else {
+            fits = n < 0 || (this.masks.always[n] & back) == 0;
+          }
+        }
+        if (fits) {
+          allowed |= 1 << turn;
+        }
+      }
+    }
+    return allowed;
+  }
+}
+
+// searches from one state of a BoardSolver, forking a copy for each turn of
+// the next choice until deep enough, and then searching sequentially
+class SolverBranch extends RecursiveAction {
+  static final long serialVersionUID = 1L;
+
+  ParallelBoardSolver owner;
+  BoardSolver solver;
+  int depth;
+
+  // The Constructor
+  SolverBranch(ParallelBoardSolver owner, BoardSolver solver, int depth) {
+    this.owner = owner;
+    this.solver = solver;
+    this.depth = depth;
+  }
+
+  protected void compute() {
+    BoardSolver solver = this.solver;
+    if (this.owner.cancel.get()) {
+      return;
+    }
+    if (solver.expired()) {
+      this.owner.gaveUp.set(true);
+      return;
+    }
+    if (!solver.propagate()) {
+      return;
+    }
+    int cell = solver.choose(-1);
+    if (cell < 0) {
+      this.owner.finish(solver.turns());
+    }
+    else if (this.depth >= this.owner.forkDepth) {
+      int[] turns = solver.search();
+      if (turns != null) {
+        this.owner.finish(turns);
+      }
+      else if (solver.gaveUp) {
+        this.owner.gaveUp.set(true);
+      }
+    }
+    else {
+      ArrayList<SolverBranch> branches = new ArrayList<SolverBranch>();
+      for (int turn = 0; turn < 4; turn++) {
+        if ((solver.domain[cell] & (1 << turn)) != 0) {
+          BoardSolver copy = new BoardSolver(solver);
+          copy.order = solver.order * 4 + turn + 1;
+          copy.set(BoardSolver.DOMAIN, cell, 1 << turn);
+          copy.enqueue(cell);
+          branches.add(new SolverBranch(this.owner, copy, this.depth + 1));
+        }
+      }
+      // the copies hold everything the branches need
+      this.solver = null;
+      invokeAll(branches);
+    }
+  }
+}
+
+// the image of every tile a board can show, built the first time it is
+// needed for a given tile size. Tiles are keyed by the low six bits of a
+// PackedBoard cell: 16 wirings, powered or not, with or without the station
+class TileSprites {
+  static final int KEYS = 64;
+
+  int size;
+  WorldImage[] sprites;
+
+  // The Constructor
+  TileSprites(int size) {
+    this.size = size;
+    this.sprites = new WorldImage[KEYS];
+  }
+
+  // the image of a tile in the state of the given cell byte
+  WorldImage sprite(int cell) {
+    int key = cell & (KEYS - 1);
+    if (this.sprites[key] == null) {
+      GamePiece piece = new GamePiece();
+      PackedBoard tile = new PackedBoard(1, 1);
+      tile.cells[0] = (byte) key;
+      tile.writeTo(piece, 0);
+      this.sprites[key] = piece.tileImage(this.size, this.size / 4, piece.poweredColor(),
+          piece.powerStation);
+    }
+    return this.sprites[key];
+  }
+}
+
+// the cells of a board that changed since they were last drawn,
+// each listed once however often it changed
+class DirtyCells {
+  // the most cells listed before every cell is taken as dirty instead, as
+  // repainting the whole view then costs no more than the list would
+  static final int LIST_LIMIT = 1 << 12;
+
+  boolean[] marked;
+  int[] cells;
+  int count;
+  // whether every cell needs drawing, as after the first frame
+  boolean all;
+
+  // The Constructor, with every cell dirty. The list grows with the
+  // cells changed between frames rather than with the board
+  DirtyCells(int size) {
+    this.marked = new boolean[size];
+    this.cells = new int[16];
+    this.all = true;
+  }
+
+  // lists the given cell as dirty, unless every cell already is
+  void mark(int i) {
+    if (this.count == LIST_LIMIT) {
+      this.clear();
+      this.all = true;
+    }
+    if (!this.all && !this.marked[i]) {
+      this.marked[i] = true;
+      if (this.count == this.cells.length) {
+        this.cells = Arrays.copyOf(this.cells, this.count * 2);
+      }
+      this.cells[this.count++] = i;
+    }
+  }
+
+  // forgets every dirty cell, once they have been drawn
+  void clear() {
+    for (int k = 0; k < this.count; k++) {
+      this.marked[this.cells[k]] = false;
+    }
+    this.count = 0;
+    this.all = false;
+  }
+}
+
+// the part of a board shown in the window: the pixel of the board image
+// at the window's top-left corner, and the size of a cell in pixels.
+// The view never leaves the board, and zooming keeps its center in place
+class Camera {
+  static final int MIN_CELL = 4;
+  static final int MAX_CELL = 200;
+
+  // the size of the board in cells, and of the window in pixels
+  int columns;
+  int rows;
+  int viewWidth;
+  int viewHeight;
+  int cellSize;
+  int left;
+  int top;
+  // counts every move, so retained images know to repaint
+  int moves;
+
+  // The Constructor, showing the top-left corner of the board
+  Camera(int columns, int rows, int viewWidth, int viewHeight, int cellSize) {
+    this.columns = columns;
+    this.rows = rows;
+    this.viewWidth = viewWidth;
+    this.viewHeight = viewHeight;
+    this.cellSize = cellSize;
+  }
+
+  // moves the view by the given number of cells
+  void pan(int columns, int rows) {
+    this.left += columns * this.cellSize;
+    this.top += rows * this.cellSize;
+    this.clamp();
+    this.moves++;
+  }
+
+  // doubles or halves the size of a cell
+  void zoom(boolean in) {
+    int size = in ? Math.min(this.cellSize * 2, MAX_CELL) : Math.max(this.cellSize / 2, MIN_CELL);
+    if (size != this.cellSize) {
+      long centerX = this.left + this.viewWidth / 2;
+      long centerY = this.top + this.viewHeight / 2;
+      this.left = (int) (centerX * size / this.cellSize - this.viewWidth / 2);
+      this.top = (int) (centerY * size / this.cellSize - this.viewHeight / 2);
+      this.cellSize = size;
+      this.clamp();
+      this.moves++;
+    }
+  }
+
+  // keeps the view on the board
+  void clamp() {
+    this.left = Math.max(0, Math.min(this.left, this.columns * this.cellSize - this.viewWidth));
+    this.top = Math.max(0, Math.min(this.top, this.rows * this.cellSize - this.viewHeight));
+  }
+
+  // moves the camera for the keys it uses, returning whether it used the key
+  boolean onKey(String key) {
+    int step = Math.max(1, Math.min(this.viewWidth, this.viewHeight) / this.cellSize / 4);
+    if (key.equals("w")) {
+      this.pan(0, -step);
+    }
+    else if (key.equals("a")) {
+      this.pan(-step, 0);
+    }
+    else if (key.equals("s")) {
+      this.pan(0, step);
+    }
+    else if (key.equals("d")) {
+      this.pan(step, 0);
+    }
+    else if (key.equals("+") || key.equals("=")) {
+      this.zoom(true);
+    }
+    else if (key.equals("-")) {
+      this.zoom(false);
+    }
+    else {
+      return false;
+    }
+    return true;
+  }
+
+  // the index of the cell under the given window pixel, or -1 if none is
+  int cellAt(int x, int y) {
+    if (x < 0 || y < 0 || x >= this.viewWidth || y >= this.viewHeight) {
+      return -1;
+    }
+    int col = (x + this.left) / this.cellSize;
+    int row = (y + this.top) / this.cellSize;
+    if (col >= this.columns || row >= this.rows) {
+      return -1;
+    }
+    return col * this.rows + row;
+  }
+
+  // the visible columns and rows, from first up to but excluding last
+  int firstColumn() {
+    return this.left / this.cellSize;
+  }
+
+  int lastColumn() {
+    return Math.min(this.columns, (this.left + this.viewWidth + this.cellSize - 1) / this.cellSize);
+  }
+
+  int firstRow() {
+    return this.top / this.cellSize;
+  }
+
+  int lastRow() {
+    return Math.min(this.rows, (this.top + this.viewHeight + this.cellSize - 1) / this.cellSize);
+  }
+
+  // the window pixel of the left edge of the given column
+  int screenX(int col) {
+    return col * this.cellSize - this.left;
+  }
+
+  // the window pixel of the top edge of the given row
+  int screenY(int row) {
+    return row * this.cellSize - this.top;
+  }
+}
+
+// paints tiles in the look of GamePiece.tileImage with Java2D, straight into
+// int pixels and without building any WorldImage. Each of the 64 tile states
+// is rasterized once for the size, and painting a tile copies its rows
+class TilePainter {
+  static final int BACKGROUND = Color.DARK_GRAY.getRGB();
+  static final int FRAME = Color.BLACK.getRGB();
+
+  int size;
+  int[][] tiles;
+
+  // The Constructor
+  TilePainter(int size) {
+    this.size = size;
+    this.tiles = new int[TileSprites.KEYS][];
+  }
+
+  // the pixels of the tile in the state of the given cell byte, row by row
+  int[] tile(int cell) {
+    int key = cell & (TileSprites.KEYS - 1);
+    if (this.tiles[key] == null) {
+      this.tiles[key] = this.rasterize(key);
+    }
+    return this.tiles[key];
+  }
+
+  // draws the tile with the given key, as tileImage composes it
+  int[] rasterize(int key) {
+    int size = this.size;
+    int wireWidth = size / 4;
+    int wireLength = (size + 1) / 2;
+    int middle = (size - wireWidth) / 2;
+    Color wire = (key & PackedBoard.POWERED) != 0 ? Color.YELLOW : Color.GRAY;
+    BufferedImage image = new BufferedImage(size, size, BufferedImage.TYPE_INT_ARGB);
+    Graphics2D g = image.createGraphics();
+
+    g.setColor(Color.DARK_GRAY);
+    g.fillRect(0, 0, size, size);
+    g.setColor(wire);
+    g.fillRect(middle, middle, wireWidth, wireWidth);
+    if ((key & PackedBoard.TOP) != 0) {
+      g.fillRect(middle, 0, wireWidth, wireLength);
+    }
+    if ((key & PackedBoard.RIGHT) != 0) {
+      g.fillRect(size - wireLength, middle, wireLength, wireWidth);
+    }
+    if ((key & PackedBoard.BOTTOM) != 0) {
+      g.fillRect(middle, size - wireLength, wireWidth, wireLength);
+    }
+    if ((key & PackedBoard.LEFT) != 0) {
+      g.fillRect(0, middle, wireLength, wireWidth);
+    }
+    if ((key & PackedBoard.STATION) != 0) {
+      // a seven pointed star, every second point joined
+      int[] xs = new int[14];
+      int[] ys = new int[14];
+      double outer = size / 3;
+      double inner = outer * Math.cos(2 * Math.PI / 7) / Math.cos(Math.PI / 7);
+      for (int k = 0; k < 14; k++) {
+        double radius = k % 2 == 0 ? outer : inner;
+        double angle = -Math.PI / 2 + k * Math.PI / 7;
+        xs[k] = (int) Math.round(size / 2.0 + radius * Math.cos(angle));
+        ys[k] = (int) Math.round(size / 2.0 + radius * Math.sin(angle));
+      }
+      g.setColor(new Color(0, 255, 255));
+      g.fillPolygon(xs, ys, 14);
+      g.setColor(new Color(255, 128, 0));
+      g.drawPolygon(xs, ys, 14);
+    }
+    g.setColor(Color.BLACK);
+    g.drawRect(0, 0, size - 1, size - 1);
+    g.dispose();
+    return image.getRGB(0, 0, size, size, null, 0, size);
+  }
+
+  // copies the tile of the given cell byte into a raster of the given width
+  // and height with its top-left corner at x, y, clipped to the raster
+  void paint(int[] raster, int width, int height, int x, int y, int cell) {
+    int[] tile = this.tile(cell);
+    int fromX = Math.max(0, -x);
+    int toX = Math.min(this.size, width - x);
+    for (int row = Math.max(0, -y); row < Math.min(this.size, height - y); row++) {
+      if (fromX < toX) {
+        System.arraycopy(tile, row * this.size + fromX, raster, (y + row) * width + x + fromX,
+            toX - fromX);
+      }
+    }
+  }
+}
+
+// a retained image of the board in the camera: tiles are painted into a
+// persistent window-sized raster only when their cell is dirty, so a frame
+// in which nothing changed paints nothing and a click repaints just the
+// tiles it changed. Moving the camera repaints the visible tiles only. The
+// raster is handed to the scene as one image, and only the pixels that
+// actually changed are pushed into it
+class RetainedScene {
+  // the color of the window where there is no board
+  static final int FRAME_BACKGROUND = 0xFF000000;
+
+  PackedBoard board;
+  Camera camera;
+  TilePainter painter;
+  // the pixels last pushed into the buffer
+  int[] frame;
+  ComputedPixelImage buffer;
+  // the colors pushed so far, with the Color each is pushed as
+  int[] palette = new int[8];
+  Color[] colors = new Color[8];
+  int paletteSize;
+  // the camera moves the buffer was painted for
+  int moves;
+  // the number of tiles painted by the last frame
+  int painted;
+
+  // The Constructor, tracking the changes to the given board
+  RetainedScene(PackedBoard board, Camera camera) {
+    this.board = board;
+    this.camera = camera;
+    this.painter = new TilePainter(camera.cellSize);
+    this.frame = new int[camera.viewWidth * camera.viewHeight];
+    this.buffer = new ComputedPixelImage(camera.viewWidth, camera.viewHeight);
+    this.moves = camera.moves;
+    board.dirty = new DirtyCells(board.cells.length);
+  }
+
+  // paints the dirty tiles into the buffer, and returns the buffer
+  WorldImage present() {
+    DirtyCells dirty = this.board.dirty;
+    Camera view = this.camera;
+    this.painted = 0;
+    if (this.painter.size != view.cellSize) {
+      this.painter = new TilePainter(view.cellSize);
+      dirty.all = true;
+    }
+    if (this.moves != view.moves) {
+      this.moves = view.moves;
+      dirty.all = true;
+    }
+
+    if (dirty.all) {
+      // the background only shows outside the visible tiles
+      int left = Math.max(0, view.screenX(view.firstColumn()));
+      int right = Math.min(view.viewWidth, view.screenX(view.lastColumn()));
+      int top = Math.max(0, view.screenY(view.firstRow()));
+      int bottom = Math.min(view.viewHeight, view.screenY(view.lastRow()));
+      for (int y = 0; y < view.viewHeight; y++) {
+        boolean covered = y >= top && y < bottom;
+        for (int x = 0; x < view.viewWidth; x++) {
+          if (!covered || x < left || x >= right) {
+            this.push(x, y, FRAME_BACKGROUND);
+          }
+        }
+      }
+      for (int col = view.firstColumn(); col < view.lastColumn(); col++) {
+        for (int row = view.firstRow(); row < view.lastRow(); row++) {
+          this.paint(col, row);
+        }
+      }
+    }
+    else {
+      for (int k = 0; k < dirty.count; k++) {
+        int i = dirty.cells[k];
+        this.paint(i / this.board.height, i % this.board.height);
+      }
+    }
+    dirty.clear();
+    return this.buffer;
+  }
+
+  // paints the tile of the given cell, clipped to the window
+  void paint(int col, int row) {
+    Camera view = this.camera;
+    int size = this.painter.size;
+    int left = view.screenX(col);
+    int top = view.screenY(row);
+    if (left >= view.viewWidth || top >= view.viewHeight || left + size <= 0
+        || top + size <= 0) {
+      return;
+    }
+    int[] tile = this.painter.tile(this.board.cells[this.board.index(col, row)]);
+    int fromX = Math.max(0, -left);
+    int toX = Math.min(size, view.viewWidth - left);
+    int toY = Math.min(size, view.viewHeight - top);
+    for (int y = Math.max(0, -top); y < toY; y++) {
+      // ComputedPixelImage takes pixels one setPixel at a time, with no bulk
+      // write, so only the pixels that differ from the frame are sent to it;
+      // the frame row itself is then copied whole, as TilePainter.paint does
+      int from = y * size + fromX;
+      int to = (top + y) * view.viewWidth + left + fromX;
+      for (int x = 0; x < toX - fromX; x++) {
+        if (this.frame[to + x] != tile[from + x]) {
+          this.buffer.setPixel(left + fromX + x, top + y, this.color(tile[from + x]));
+        }
+      }
+      System.arraycopy(tile, from, this.frame, to, toX - fromX);
+    }
+    this.painted++;
+  }
+
+  // sets a pixel of the window, if it is not that color already
+  void push(int x, int y, int argb) {
+    int i = y * this.camera.viewWidth + x;
+    if (this.frame[i] != argb) {
+      this.frame[i] = argb;
+      this.buffer.setPixel(x, y, this.color(argb));
+    }
+  }
+
+  // the Color for the given pixel, made once per color: tiles use only a
+  // handful, so the palette is searched in order
+  Color color(int argb) {
+    for (int k = 0; k < this.paletteSize; k++) {
+      if (this.palette[k] == argb) {
+        return this.colors[k];
+      }
+    }
+    if (this.paletteSize == this.palette.length) {
+      this.palette = Arrays.copyOf(this.palette, 2 * this.paletteSize);
+      this.colors = Arrays.copyOf(this.colors, 2 * this.paletteSize);
+    }
+    this.palette[this.paletteSize] = argb;
+    this.colors[this.paletteSize] = new Color(argb, true);
+    return this.colors[this.paletteSize++];
+  }
+}
+
+//Utilities methods
+class Utils {
+  // Generate a board with the power station at position 1, 1
+  public ArrayList<ArrayList<GamePiece>> initializeBoard(int width, int height) {
+    ArrayList<ArrayList<GamePiece>> gameBoard = new ArrayList<>();
+    boolean isPowerStation = false;
+
+    for (int i = 1; i <= width; i++) {
+      ArrayList<GamePiece> columnList = new ArrayList<>();
+      for (int j = 1; j <= height; j++) {
+        // Place power station at (1, 1)
+        if (i == 1 && j == 1) {
+          isPowerStation = true;
+        }
+        else {
+          isPowerStation = false;
+        }
+        columnList.add(new GamePiece(j, i, false, false, false, false, isPowerStation));
+      }
+
+      gameBoard.add(columnList);
+    }
+
+    return gameBoard;
+  }
+
+  // Adds GamePieces on the board to a list of Nodes
+  public ArrayList<GamePiece> assignNodes(ArrayList<ArrayList<GamePiece>> list) {
+    ArrayList<GamePiece> nodes = new ArrayList<GamePiece>();
+    for (int i = 0; i < list.size(); i++) {
+      for (int j = 0; j < list.get(i).size(); j++) {
+        nodes.add(list.get(i).get(j));
+      }
+    }
+    return nodes;
+  }
+
+  // Rotating the piece clockwise
+  public void rotate(GamePiece piece) {
+    boolean temp = piece.top;
+    piece.top = piece.left;
+    piece.left = piece.bottom;
+    piece.bottom = piece.right;
+    piece.right = temp;
+  }
+
+  // Rotates each GamePiece on the board a random number of times
+  public void randomizeNodes(ArrayList<GamePiece> list, Random rand) {
+    for (int i = 0; i < list.size(); i++) {
+      int num = rand.nextInt(25);
+      for (int j = 0; j <= num; j++) {
+        rotate(list.get(i));
+      }
+    }
+  }
+
+  // Find the power station
+  public GamePiece findPowerStation(ArrayList<ArrayList<GamePiece>> list) {
+    GamePiece powerStationPiece = new GamePiece(3, 3, false, false, false, false, false);
+    for (ArrayList<GamePiece> arrGp : list) {
+      for (GamePiece gp : arrGp) {
+        if (gp.powerStation) {
+          powerStationPiece = gp;
+        }
+      }
+    }
+    return powerStationPiece;
+  }
+
+  // Check's if a given GamePiece is connected to a surrounding
+  // GamePiece based on the given direction
+  public boolean checkIfConnected(String direction, ArrayList<ArrayList<GamePiece>> list, int width,
+      int height, GamePiece piece) {
+    if (direction.equals("up")) {
+      if (piece.row == 1) {
+        return false;
+      }
+      else {
+        return piece.top && list.get(piece.col - 1).get(piece.row - 2).bottom;
+      }
+    }
+    else if (direction.equals("right")) {
+      if (piece.col == width) {
+        return false;
+      }
+      else {
+        return piece.right && list.get(piece.col).get(piece.row - 1).left;
+      }
+    }
+    else if (direction.equals("down")) {
+      if (piece.row == height) {
+        return false;
+      }
+      else {
+        return piece.bottom && list.get(piece.col - 1).get(piece.row).top;
+      }
+    }
+    else if (direction.equals("left")) {
+      if (piece.col == 1) {
+        return false;
+      }
+      else {
+        return piece.left && list.get(piece.col - 2).get(piece.row - 1).right;
+      }
+    }
+    else {
+      return false;
+    }
+  }
+
+  // lights up the piece if supposed to
+  public void lightUp(ArrayList<ArrayList<GamePiece>> list, int width, int height,
+      ArrayList<GamePiece> list2) {
+
+    ArrayList<GamePiece> alreadySeen = new ArrayList<GamePiece>();
+    ArrayList<GamePiece> workList = new ArrayList<GamePiece>();
+    workList.add(findPowerStation(list));
+    while (workList.size() != 0) {
+      GamePiece gp = new GamePiece(3, 3, false, false, false, false, false);
+      GamePiece next = workList.remove(0);
+      GamePiece top = gp;
+      GamePiece right = gp;
+      GamePiece bottom = gp;
+      GamePiece left = gp;
+
+      if (next.col != 1) {
+        left = list.get(next.col - 2).get(next.row - 1);
+      }
+      if (next.col != width) {
+        right = list.get(next.col).get(next.row - 1);
+      }
+
+      if (next.row != 1) {
+        top = list.get(next.col - 1).get(next.row - 2);
+      }
+
+      if (next.row != height) {
+        bottom = list.get(next.col - 1).get(next.row);
+      }
+
+      next.powered = true;
+      if (!alreadySeen.contains(top) && checkIfConnected("up", list, width, height, next)) {
+        workList.add(top);
+      }
+
+      if (!alreadySeen.contains(right) && checkIfConnected("right", list, width, height, next)) {
+        workList.add(right);
+      }
+
+      if (!alreadySeen.contains(bottom) && checkIfConnected("down", list, width, height, next)) {
+        workList.add(bottom);
+      }
+
+      if (!alreadySeen.contains(left) && checkIfConnected("left", list, width, height, next)) {
+        workList.add(left);
+      }
+
+      alreadySeen.add(next);
+
+      for (GamePiece piece : list2) {
+        if (!(alreadySeen.contains(piece))) {
+          piece.powered = false;
+        }
+      }
+    }
+  }
+
+  // Checks if all of the wires are lit
+  public boolean win(ArrayList<GamePiece> list) {
+    int lightsUp = 0;
+    for (GamePiece piece : list) {
+      if (piece.powered) {
+        lightsUp++;
+      }
+    }
+    return lightsUp == list.size();
+  }
+
+  // Moves the power station from one GamePiece to the next
+  public void movePowerStation(String direction, ArrayList<ArrayList<GamePiece>> list) {
+    GamePiece powerStation = new Utils().findPowerStation(list);
+    powerStation.powerStation = false;
+
+    if (direction.equals("up")) {
+      list.get(powerStation.col - 1).get(powerStation.row - 2).powerStation = true;
+
+    }
+    else if (direction.equals("right")) {
+      list.get(powerStation.col).get(powerStation.row - 1).powerStation = true;
+
+    }
+    else if (direction.equals("down")) {
+      list.get(powerStation.col - 1).get(powerStation.row).powerStation = true;
+
+    }
+    else if (direction.equals("left")) {
+      list.get(powerStation.col - 2).get(powerStation.row - 1).powerStation = true;
+    }
+  }
+
+  // Iterates through each cell,
+  // connecting it to the neighbors below and to the right of it,
+  // so that every pair of neighbors gets exactly one edge,
+  // weighed as for seed 0 so that the same board always gets the same edges
+  public ArrayList<Edge> createEdges(ArrayList<ArrayList<GamePiece>> list, int width, int height) {
+    return this.createEdges(list, width, height, new BoardRandom(0));
+  }
+
+  // createEdges, weighing each edge as GridEdges does for the same seed
+  public ArrayList<Edge> createEdges(ArrayList<ArrayList<GamePiece>> list, int width, int height,
+      BoardRandom rand) {
     ArrayList<Edge> edgeList = new ArrayList<>();
+    int vertical = width * (height - 1);
+
+    for (int i = 0; i < width; i++) {
+      for (int j = 0; j < height; j++) {
+        GamePiece current = list.get(i).get(j);
+
+        // Connect to the neighbor below
+        if (j < height - 1) {
+          GamePiece below = list.get(i).get(j + 1);
+          edgeList.add(new Edge(current, below, rand.weight(i * (height - 1) + j)));
+        }
+        // Connect to the right neighbor
+        if (i < width - 1) {
+          GamePiece right = list.get(i + 1).get(j);
+          edgeList.add(new Edge(current, right, rand.weight(vertical + i * height + j)));
+        }
+      }
+    }
+    edgeList.sort(new SortEdges());
+    return edgeList;
+  }
+
+  // Compute a hashmap where each game piece from the edges list is mapped to
+  // itself
+  public HashMap<GamePiece, GamePiece> makeHashMap(ArrayList<Edge> list) {
+    HashMap<GamePiece, GamePiece> map = new HashMap<GamePiece, GamePiece>();
+    for (Edge edge : list) {
+      map.put(edge.fromNode, edge.fromNode);
+      map.put(edge.toNode, edge.toNode);
+    }
+    return map;
+  }
+
+  // Find the root of a game piece within the map
+  public GamePiece find(HashMap<GamePiece, GamePiece> map, GamePiece edge) {
+    GamePiece root = edge;
+    while (!(map.get(root).equals(root))) {
+      root = map.get(root);
+    }
+    return root;
+  }
+
+  // Merges two subsets into one, linking one gamepiece to another
+  public void union(HashMap<GamePiece, GamePiece> map, GamePiece to, GamePiece from) {
+    map.put(map.get(to), from);
+  }
+
+  // Compare gamepiece with connected neighbors,
+  // update their state or properties
+  public void updateGamePieces(ArrayList<Edge> list) {
+    for (Edge edge : list) {
+      edge.fromNode.compare(edge.toNode);
+    }
+  }
+}
+
+// class for Edge 
+class Edge {
+  GamePiece fromNode;
+  GamePiece toNode;
+  int weight;
+
+  // The Constructor
+  Edge(GamePiece fromNode, GamePiece toNode, int weight) {
+    this.fromNode = fromNode;
+    this.toNode = toNode;
+    this.weight = weight;
+  }
+}
+
+//Union class
+class Union {
+  // the dense index of each node of the edges, assigned once up front
+  HashMap<GamePiece, Integer> indices;
+  DisjointSet representatives;
+  ArrayList<Edge> edgesInTree;
+  ArrayList<Edge> worklist;
+
+  // The Constructor
+  Union(ArrayList<Edge> worklist) {
+    this.indices = new HashMap<GamePiece, Integer>();
+    for (Edge edge : worklist) {
+      this.indices.putIfAbsent(edge.fromNode, this.indices.size());
+      this.indices.putIfAbsent(edge.toNode, this.indices.size());
+    }
+    this.representatives = new DisjointSet(this.indices.size());
+    this.worklist = worklist;
+    this.edgesInTree = new ArrayList<Edge>();
+  }
+
+  // compute the minimum spanning tree of a graph
+  // processes edges in ascending weight order
+  // connecting sets of nodes without forming cycles until all nodes are
+  // connected.
+  ArrayList<Edge> kruskalAlgo() {
+    // look every edge up once, so the loop itself does no hashing
+    int[] from = new int[worklist.size()];
+    int[] to = new int[worklist.size()];
+    for (int i = 0; i < worklist.size(); i++) {
+      from[i] = indices.get(worklist.get(i).fromNode);
+      to[i] = indices.get(worklist.get(i).toNode);
+    }
+
+    for (int next = 0; next < worklist.size(); next++) {
+      if (representatives.union(from[next], to[next])) {
+        edgesInTree.add(worklist.get(next));
+      }
+    }
+    return edgesInTree;
+  }
+}
+
+// a disjoint-set forest over the dense indices 0 to size - 1,
+// using path halving and union by rank
+class DisjointSet {
+  int[] parent;
+  byte[] rank;
+
+  // The Constructor, with every index in its own set
+  DisjointSet(int size) {
+    this.parent = new int[size];
+    this.rank = new byte[size];
+    for (int i = 0; i < size; i++) {
+      this.parent[i] = i;
+    }
+  }
+
+  // Find the representative of the given index, halving the path on the way
+  int find(int i) {
+    while (this.parent[i] != i) {
+      this.parent[i] = this.parent[this.parent[i]];
+      i = this.parent[i];
+    }
+    return i;
+  }
 
-    for (int i = 0; i < width; i++) {
-      for (int j = 0; j < height; j++) {
-        GamePiece current = list.get(i).get(j);
+  // Merges the sets of the two indices, hanging the shorter tree under the
+  // taller one, and returns false if they were already in the same set
+  boolean union(int a, int b) {
+    int rootA = this.find(a);
+    int rootB = this.find(b);
+    if (rootA == rootB) {
+      return false;
+    }
+    if (this.rank[rootA] < this.rank[rootB]) {
+      this.parent[rootA] = rootB;
+    }
+    else if (this.rank[rootA] > this.rank[rootB]) {
+      this.parent[rootB] = rootA;
+    }
+    else {
+      this.parent[rootB] = rootA;
+      this.rank[rootA]++;
+    }
+    return true;
+  }
+}
 
-        // Connect to the right neighbor
-        if (j < height - 1) {
-          GamePiece right = list.get(i).get(j + 1);
-          edgeList.add(new Edge(current, right));
+//class for SortEdges, comparing the edges weight
+class SortEdges implements Comparator<Edge> {
+  public int compare(Edge edge1, Edge edge2) {
+    return edge1.weight - edge2.weight;
+  }
+}
+
+// every edge between neighboring cells of a board, each pair exactly once,
+// stored in primitive arrays. Edges inside a column come first, numbered
+// col * (height - 1) + row, then edges between columns, numbered
+// (width * (height - 1)) + col * height + row
+class GridEdges {
+  // weights are drawn from 0 to MAX_WEIGHT - 1
+  static final int MAX_WEIGHT = 25;
+
+  int width;
+  int height;
+  int[] from;
+  int[] to;
+  byte[] weight;
+
+  // The Constructor, weighing each edge from the given seed
+  GridEdges(int width, int height, BoardRandom rand) {
+    this.width = width;
+    this.height = height;
+    int vertical = width * Math.max(height - 1, 0);
+    int size = vertical + Math.max(width - 1, 0) * height;
+    this.from = new int[size];
+    this.to = new int[size];
+    this.weight = new byte[size];
+
+    int e = 0;
+    for (int col = 0; col < width; col++) {
+      for (int row = 0; row < height - 1; row++) {
+        this.from[e] = col * height + row;
+        this.to[e] = col * height + row + 1;
+        e++;
+      }
+    }
+    for (int col = 0; col < width - 1; col++) {
+      for (int row = 0; row < height; row++) {
+        this.from[e] = col * height + row;
+        this.to[e] = (col + 1) * height + row;
+        e++;
+      }
+    }
+    for (int i = 0; i < size; i++) {
+      this.weight[i] = (byte) rand.weight(i);
+    }
+  }
+
+  // the number of edges
+  int size() {
+    return this.from.length;
+  }
+
+  // the edges in ascending weight order, ties kept in edge order,
+  // by counting sort over the bounded weights
+  int[] sortedByWeight() {
+    return StreamingGenerator.sortedByWeight(this.weight);
+  }
+
+  // wires the given edge into the board
+  void wire(PackedBoard board, int e) {
+    board.link(this.from[e], this.to[e]);
+  }
+}
+
+// a strategy for wiring a spanning tree into a packed board with no wires,
+// drawing all of its randomness from the given BoardRandom
+interface BoardGenerator {
+  void generate(PackedBoard board, BoardRandom rand);
+}
+
+// wires a random spanning tree into a packed board with Kruskal's algorithm,
+// walking the weight-sorted edges with a cursor
+class KruskalGenerator implements BoardGenerator {
+  // wires the board with a minimum spanning tree of randomly weighted edges
+  public void generate(PackedBoard board, BoardRandom rand) {
+    GridEdges edges = new GridEdges(board.width, board.height, rand);
+    DisjointSet sets = new DisjointSet(board.cells.length);
+    int[] order = edges.sortedByWeight();
+    int needed = board.cells.length - 1;
+    for (int next = 0; next < order.length && needed > 0; next++) {
+      int e = order[next];
+      if (sets.union(edges.from[e], edges.to[e])) {
+        edges.wire(board, e);
+        needed--;
+      }
+    }
+  }
+}
+
+// randomized Prim's algorithm: grows the tree out from a random cell,
+// always taking the cheapest frontier edge. The frontier is bucketed by the
+// bounded edge weights, each bucket a stack of edge numbers, so every edge
+// is pushed and popped at most once
+class PrimGenerator implements BoardGenerator {
+  public void generate(PackedBoard board, BoardRandom rand) {
+    int size = board.cells.length;
+    boolean[] inTree = new boolean[size];
+    int[][] buckets = new int[GridEdges.MAX_WEIGHT][16];
+    int[] counts = new int[GridEdges.MAX_WEIGHT];
+    int lowest = GridEdges.MAX_WEIGHT;
+
+    int next = rand.nextInt(BoardRandom.WALK, 0, size);
+    for (int added = 1; added <= size; added++) {
+      // add the cell, and its edges to cells outside the tree
+      inTree[next] = true;
+      for (int direction = 0; direction < 4; direction++) {
+        int n = board.neighbor(next, direction);
+        if (n >= 0 && !inTree[n]) {
+          int e = board.edge(next, direction);
+          int w = rand.weight(e);
+          if (counts[w] == buckets[w].length) {
+            buckets[w] = Arrays.copyOf(buckets[w], 2 * counts[w]);
+          }
+          buckets[w][counts[w]++] = e;
+          lowest = Math.min(lowest, w);
         }
-        // Connect to the bottom neighbor
-        if (i < width - 1) {
-          GamePiece below = list.get(i + 1).get(j);
-          edgeList.add(new Edge(current, below));
+      }
+
+      // take the cheapest edge that still leads out of the tree
+      next = -1;
+      while (next < 0 && lowest < GridEdges.MAX_WEIGHT) {
+        if (counts[lowest] == 0) {
+          lowest++;
         }
-        // Connect to the left neighbor
-        if (j > 0) {
-          GamePiece left = list.get(i).get(j - 1);
-          edgeList.add(new Edge(current, left));
+        else {
+          int e = buckets[lowest][--counts[lowest]];
+          int a = board.edgeFrom(e);
+          int b = board.edgeTo(e);
+          if (inTree[a] != inTree[b]) {
+            board.link(a, b);
+            next = inTree[a] ? b : a;
+          }
         }
-        // Connect to the above neighbor
-        if (i > 0) {
-          GamePiece above = list.get(i - 1).get(j);
-          edgeList.add(new Edge(current, above));
+      }
+      if (next < 0) {
+        return;
+      }
+    }
+  }
+}
+
+// Wilson's algorithm: joins each cell outside the tree by a loop-erased
+// random walk, giving a spanning tree drawn uniformly from all of them.
+// A walk only remembers the last direction it left each cell by, which
+// erases its loops for free
+class WilsonGenerator implements BoardGenerator {
+  public void generate(PackedBoard board, BoardRandom rand) {
+    int size = board.cells.length;
+    boolean[] inTree = new boolean[size];
+    byte[] exit = new byte[size];
+    long step = 0;
+    inTree[rand.nextInt(BoardRandom.WALK, step++, size)] = true;
+
+    for (int start = 0; start < size; start++) {
+      // walk until hitting the tree
+      int next = start;
+      while (!inTree[next]) {
+        int n = -1;
+        while (n < 0) {
+          exit[next] = (byte) rand.nextInt(BoardRandom.WALK, step++, 4);
+          n = board.neighbor(next, exit[next]);
         }
+        next = n;
+      }
+
+      // and add the walk with its loops erased
+      next = start;
+      while (!inTree[next]) {
+        inTree[next] = true;
+        int n = board.neighbor(next, exit[next]);
+        board.link(next, n);
+        next = n;
       }
     }
-    edgeList.sort(new SortEdges());
-    return edgeList;
+  }
+}
+
+// an iterative randomized depth-first search: carves from a random cell
+// into a random unvisited neighbor, backing up when there is none,
+// giving long winding corridors
+class DfsGenerator implements BoardGenerator {
+  public void generate(PackedBoard board, BoardRandom rand) {
+    int size = board.cells.length;
+    boolean[] visited = new boolean[size];
+    int[] stack = new int[size];
+    int[] options = new int[4];
+    long step = 0;
+
+    int top = 0;
+    stack[top++] = rand.nextInt(BoardRandom.WALK, step++, size);
+    visited[stack[0]] = true;
+    while (top > 0) {
+      int next = stack[top - 1];
+      int count = 0;
+      for (int direction = 0; direction < 4; direction++) {
+        int n = board.neighbor(next, direction);
+        if (n >= 0 && !visited[n]) {
+          options[count++] = n;
+        }
+      }
+
+      if (count == 0) {
+        top--;
+      }
+      else {
+        int n = options[rand.nextInt(BoardRandom.WALK, step++, count)];
+        board.link(next, n);
+        visited[n] = true;
+        stack[top++] = n;
+      }
+    }
+  }
+}
+
+// a loop over the indices 0 to size - 1 whose iterations are independent,
+// run in grain-sized slices on a ForkJoinPool
+abstract class ParallelLoop {
+  // runs the iterations from lo to hi - 1
+  abstract void run(int lo, int hi);
+
+  // runs every iteration on the given pool, returning once all are done
+  void invoke(ForkJoinPool pool, int size, int grain) {
+    pool.invoke(new LoopSlice(this, 0, size, Math.max(grain, 1)));
+  }
+}
+
+// a slice of a ParallelLoop, split in halves until it is at most grain long
+class LoopSlice extends RecursiveAction {
+  static final long serialVersionUID = 1L;
+
+  ParallelLoop loop;
+  int lo;
+  int hi;
+  int grain;
+
+  // The Constructor
+  LoopSlice(ParallelLoop loop, int lo, int hi, int grain) {
+    this.loop = loop;
+    this.lo = lo;
+    this.hi = hi;
+    this.grain = grain;
+  }
+
+  protected void compute() {
+    if (this.hi - this.lo <= this.grain) {
+      this.loop.run(this.lo, this.hi);
+    }
+    else {
+      int mid = (this.lo + this.hi) >>> 1;
+      invokeAll(new LoopSlice(this.loop, this.lo, mid, this.grain),
+          new LoopSlice(this.loop, mid, this.hi, this.grain));
+    }
+  }
+}
+
+// wires the same spanning tree as KruskalGenerator using Boruvka's algorithm
+// on a ForkJoinPool. Each round, every component picks its cheapest outgoing
+// edge in parallel, then the picks are merged and the cells relabelled in
+// parallel. Edges are ranked by weight and then by edge number, which is the
+// order KruskalGenerator's stable sort gives, so both build the same tree
+class ParallelBoruvkaGenerator implements BoardGenerator {
+  // cells per task
+  static final int GRAIN = 1 << 14;
+  static final long NONE = Long.MAX_VALUE;
+
+  ForkJoinPool pool;
+
+  // The Constructor
+  ParallelBoruvkaGenerator(ForkJoinPool pool) {
+    this.pool = pool;
+  }
+
+  // The Constructor, using the common pool
+  ParallelBoruvkaGenerator() {
+    this(ForkJoinPool.commonPool());
+  }
+
+  // wires the board with the minimum spanning tree of the seeded weights
+  public void generate(PackedBoard board, BoardRandom rand) {
+    BoruvkaState state = new BoruvkaState(board, rand);
+    new BoruvkaWeigh(state).invoke(this.pool, state.weight.length, GRAIN);
+
+    int[] roots = new int[state.size];
+    int rootCount = state.size;
+    for (int i = 0; i < state.size; i++) {
+      roots[i] = i;
+    }
+    while (rootCount > 1) {
+      for (int k = 0; k < rootCount; k++) {
+        state.best.set(roots[k], NONE);
+      }
+      new BoruvkaScan(state).invoke(this.pool, state.size, GRAIN);
+
+      // merge the picks, most of which are picked from both ends
+      for (int k = 0; k < rootCount; k++) {
+        long key = state.best.get(roots[k]);
+        if (key != NONE) {
+          int e = (int) key;
+          int a = board.edgeFrom(e);
+          int b = board.edgeTo(e);
+          if (state.sets.union(a, b)) {
+            board.link(a, b);
+          }
+        }
+      }
+      int kept = 0;
+      for (int k = 0; k < rootCount; k++) {
+        if (state.sets.parent[roots[k]] == roots[k]) {
+          roots[kept++] = roots[k];
+        }
+      }
+      rootCount = kept;
+      new BoruvkaRelabel(state).invoke(this.pool, state.size, GRAIN);
+    }
+  }
+
+  // generate, then scramble the board in parallel too
+  void generateScrambled(PackedBoard board, BoardRandom rand) {
+    this.generate(board, rand);
+    new ScrambleLoop(board, rand).invoke(this.pool, board.cells.length, GRAIN);
+  }
+}
+
+// the arrays shared by the phases of a ParallelBoruvkaGenerator
+class BoruvkaState {
+  PackedBoard board;
+  BoardRandom rand;
+  int size;
+  int height;
+  // the number of edges inside columns, which are numbered first
+  int vertical;
+  byte[] weight;
+  // the root of each cell's component as of the last relabelling
+  int[] component;
+  // the cheapest outgoing edge of each component, as weight << 32 | edge
+  AtomicLongArray best;
+  DisjointSet sets;
+
+  // The Constructor
+  BoruvkaState(PackedBoard board, BoardRandom rand) {
+    this.board = board;
+    this.rand = rand;
+    this.size = board.cells.length;
+    this.height = board.height;
+    this.vertical = board.width * (board.height - 1);
+    this.weight = new byte[this.vertical + (board.width - 1) * board.height];
+    this.component = new int[this.size];
+    for (int i = 0; i < this.size; i++) {
+      this.component[i] = i;
+    }
+    this.best = new AtomicLongArray(this.size);
+    this.sets = new DisjointSet(this.size);
+  }
+
+  // lowers the best edge of the given component to the given key
+  void offer(int component, long key) {
+    long current = this.best.get(component);
+    while (key < current && !this.best.compareAndSet(component, current, key)) {
+      current = this.best.get(component);
+    }
+  }
+}
+
+// draws the weight of every edge
+class BoruvkaWeigh extends ParallelLoop {
+  BoruvkaState state;
+
+  // The Constructor
+  BoruvkaWeigh(BoruvkaState state) {
+    this.state = state;
+  }
+
+  void run(int lo, int hi) {
+    for (int e = lo; e < hi; e++) {
+      this.state.weight[e] = (byte) this.state.rand.weight(e);
+    }
+  }
+}
+
+// offers the edges below and to the right of each cell to both components
+class BoruvkaScan extends ParallelLoop {
+  BoruvkaState state;
+
+  // The Constructor
+  BoruvkaScan(BoruvkaState state) {
+    this.state = state;
+  }
+
+  void run(int lo, int hi) {
+    BoruvkaState s = this.state;
+    for (int i = lo; i < hi; i++) {
+      int row = i % s.height;
+      int a = s.component[i];
+      if (row < s.height - 1) {
+        int b = s.component[i + 1];
+        if (a != b) {
+          int e = i / s.height * (s.height - 1) + row;
+          long key = ((long) s.weight[e] << 32) | e;
+          s.offer(a, key);
+          s.offer(b, key);
+        }
+      }
+      if (i + s.height < s.size) {
+        int b = s.component[i + s.height];
+        if (a != b) {
+          int e = s.vertical + i;
+          long key = ((long) s.weight[e] << 32) | e;
+          s.offer(a, key);
+          s.offer(b, key);
+        }
+      }
+    }
+  }
+}
+
+// points each cell at the root of its merged component,
+// only reading the union-find so slices never race
+class BoruvkaRelabel extends ParallelLoop {
+  BoruvkaState state;
+
+  // The Constructor
+  BoruvkaRelabel(BoruvkaState state) {
+    this.state = state;
+  }
+
+  void run(int lo, int hi) {
+    int[] parent = this.state.sets.parent;
+    for (int i = lo; i < hi; i++) {
+      int root = this.state.component[i];
+      while (parent[root] != root) {
+        root = parent[root];
+      }
+      this.state.component[i] = root;
+    }
+  }
+}
+
+// scrambles a slice of the board
+class ScrambleLoop extends ParallelLoop {
+  PackedBoard board;
+  BoardRandom rand;
+
+  // The Constructor
+  ScrambleLoop(PackedBoard board, BoardRandom rand) {
+    this.board = board;
+    this.rand = rand;
+  }
+
+  void run(int lo, int hi) {
+    this.board.randomize(this.rand, lo, hi);
+  }
+}
+
+// generates boards too large for the heap straight into a memory-mapped
+// BoardFile, one PackedBoard cell byte per cell in column-major order. Columns
+// are generated in bands: Kruskal's algorithm runs over the edges of a band
+// and the edges joining it to the last column of the band before, which is
+// all that is kept between bands. Every band is joined up before the next
+// one starts, so that column is a single component of the union-find and
+// the result is one spanning tree over the whole board
+class StreamingGenerator {
+  // the number of columns generated at a time
+  int band;
+
+  // The Constructor
+  StreamingGenerator(int band) {
+    this.band = Math.max(band, 1);
+  }
+
+  // The Constructor, with bands of 64 columns
+  StreamingGenerator() {
+    this(64);
+  }
+
+  // writes the board with the given id into the given BoardFile,
+  // scrambling it as BoardId.generate does if asked to
+  void generate(BoardId id, BoardFile file, boolean scramble) throws IOException {
+    try (FileChannel channel = FileChannel.open(file.path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      file.writeHeader(channel, id.width, id.height, id.seed, 0);
+      this.generate(id, channel, BoardFile.HEADER, scramble);
+    }
+  }
+
+  // generate, writing the cells into the channel from the given offset on
+  void generate(BoardId id, FileChannel channel, long offset, boolean scramble)
+      throws IOException {
+    int width = id.width;
+    int height = id.height;
+    BoardRandom rand = new BoardRandom(id.seed);
+    long vertical = (long) width * (height - 1);
+    // the unscrambled last column of the band before
+    byte[] frontier = new byte[0];
+
+    for (int start = 0; start < width; start += this.band) {
+      int end = Math.min(start + this.band, width);
+      int first = start == 0 ? 0 : 1;
+      int columns = end - start + first;
+      byte[] cells = new byte[columns * height];
+      System.arraycopy(frontier, 0, cells, 0, frontier.length);
+      if (start == 0) {
+        cells[0] |= PackedBoard.STATION;
+      }
+
+      // the edges of the band, in GridEdges order, each as its upper or left
+      // cell times two, plus one if it goes right
+      int count = (end - start) * (height - 1) + (columns - 1) * height;
+      int[] edges = new int[count];
+      byte[] weights = new byte[count];
+      int e = 0;
+      for (int col = first; col < columns; col++) {
+        for (int row = 0; row < height - 1; row++) {
+          edges[e] = 2 * (col * height + row);
+          weights[e++] = (byte) rand.weight((start + col - first) * (long) (height - 1) + row);
+        }
+      }
+      for (int col = 1; col < columns; col++) {
+        for (int row = 0; row < height; row++) {
+          edges[e] = 2 * ((col - 1) * height + row) + 1;
+          weights[e++] = (byte) rand.weight(vertical + (start + col - first - 1) * (long) height
+              + row);
+        }
+      }
+
+      // Kruskal's algorithm, with the frontier already one component
+      DisjointSet sets = new DisjointSet(cells.length);
+      for (int row = 1; row < first * height; row++) {
+        sets.union(0, row);
+      }
+      int needed = cells.length - 1 - Math.max(first * height - 1, 0);
+      int[] order = StreamingGenerator.sortedByWeight(weights);
+      for (int next = 0; next < order.length && needed > 0; next++) {
+        int a = edges[order[next]] >> 1;
+        boolean right = (edges[order[next]] & 1) != 0;
+        int b = right ? a + height : a + 1;
+        if (sets.union(a, b)) {
+          cells[a] |= right ? PackedBoard.RIGHT : PackedBoard.BOTTOM;
+          cells[b] |= right ? PackedBoard.LEFT : PackedBoard.TOP;
+          needed--;
+        }
+      }
+
+      // everything but the last column is final, unless this is the last band
+      int done = end == width ? columns : columns - 1;
+      frontier = Arrays.copyOfRange(cells, done * height, columns * height);
+      long base = (long) (start - first) * height;
+      if (scramble) {
+        for (int i = 0; i < done * height; i++) {
+          cells[i] = PackedBoard.rotated(cells[i],
+              rand.nextInt(BoardRandom.ROTATIONS, base + i, 4));
+        }
+      }
+      if (done > 0) {
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, offset + base,
+            (long) done * height);
+        mapped.put(cells, 0, done * height);
+      }
+    }
+  }
+
+  // the indices of the given weights in ascending order, ties kept in order
+  static int[] sortedByWeight(byte[] weights) {
+    int[] starts = new int[GridEdges.MAX_WEIGHT + 1];
+    for (byte w : weights) {
+      starts[w + 1]++;
+    }
+    for (int w = 0; w < GridEdges.MAX_WEIGHT; w++) {
+      starts[w + 1] += starts[w];
+    }
+    int[] order = new int[weights.length];
+    for (int e = 0; e < weights.length; e++) {
+      order[starts[weights[e]]++] = e;
+    }
+    return order;
+  }
+}
+
+// a versioned binary save file for a board: a 32 byte header holding the
+// magic number, version, size, seed and power station, then the cell bytes
+// exactly as PackedBoard lays them out (a nibble of connections, the powered
+// and station bits, and the turns back to the solution), so that loading
+// is a single bulk copy out of a memory-mapped file. Since version 2 the
+// cells may be followed by the counts a GameEngine keeps, which take far
+// longer to work out again than to read
+class BoardFile {
+  // "LEAB", for Light Em All board
+  static final int MAGIC = 0x4C454142;
+  static final int VERSION = 2;
+  static final int HEADER = 32;
+  // the powered cells, solved tiles, turns remaining, solution diameter,
+  // radius and whether the solution spans the board, an int each
+  static final int COUNTS = 24;
+
+  Path path;
+  // the header of the last file saved or loaded
+  int width;
+  int height;
+  long seed;
+  int station;
+  // the counts of the last file saved or loaded, if it had them
+  boolean counted;
+  int powered;
+  int solvedTiles;
+  int turnsRemaining;
+  int diameter;
+  int radius;
+  boolean spanning;
+
+  // The Constructor
+  BoardFile(Path path) {
+    this.path = path;
+  }
+
+  // saves the given board, generated from the given seed
+  void save(PackedBoard board, long seed) throws IOException {
+    this.save(board, seed, null);
+  }
+
+  // saves the board the given engine plays, with its counts, so that
+  // loadEngine can play it again without searching it
+  void save(GameEngine engine) throws IOException {
+    this.save(engine.board, engine.id.seed, engine);
+  }
+
+  // saves the given board, generated from the given seed, followed by the
+  // counts of the given engine unless it is null
+  void save(PackedBoard board, long seed, GameEngine engine) throws IOException {
+    try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.CREATE,
+        StandardOpenOption.READ, StandardOpenOption.WRITE,
+        StandardOpenOption.TRUNCATE_EXISTING)) {
+      this.writeHeader(channel, board.width, board.height, seed, board.findStation());
+      this.counted = engine != null;
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, HEADER,
+          board.cells.length + (this.counted ? COUNTS : 0));
+      mapped.put(board.cells);
+      if (this.counted) {
+        this.powered = engine.poweredCount();
+        this.solvedTiles = engine.solvedTiles;
+        this.turnsRemaining = engine.turnsRemaining;
+        this.diameter = engine.diameter;
+        this.radius = engine.propagator.radius;
+        this.spanning = engine.spanning;
+        mapped.putInt(this.powered).putInt(this.solvedTiles).putInt(this.turnsRemaining)
+            .putInt(this.diameter).putInt(this.radius).putInt(this.spanning ? 1 : 0);
+      }
+    }
+  }
+
+  // writes a header for a board of the given size into the channel
+  void writeHeader(FileChannel channel, int width, int height, long seed, int station)
+      throws IOException {
+    this.width = width;
+    this.height = height;
+    this.seed = seed;
+    this.station = station;
+    MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER);
+    header.putInt(MAGIC).putInt(VERSION).putInt(width).putInt(height).putLong(seed)
+        .putInt(station);
+  }
+
+  // loads the saved board
+  PackedBoard load() throws IOException {
+    try (FileChannel channel = FileChannel.open(this.path, StandardOpenOption.READ)) {
+      if (channel.size() < HEADER) {
+        throw new IOException(this.path + " is not a board file");
+      }
+      MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (mapped.getInt() != MAGIC) {
+        throw new IOException(this.path + " is not a board file");
+      }
+      int version = mapped.getInt();
+      if (version < 1 || version > VERSION) {
+        throw new IOException(this.path + " has unsupported version " + version);
+      }
+      this.width = mapped.getInt();
+      this.height = mapped.getInt();
+      this.seed = mapped.getLong();
+      this.station = mapped.getInt();
+      if (this.width <= 0 || this.height <= 0) {
+        throw new IOException(this.path + " has no cells");
+      }
+      long cells = (long) this.width * this.height;
+      long counts = channel.size() - HEADER - cells;
+      if (cells > Integer.MAX_VALUE
+          || (counts != 0 && (version < 2 || counts != COUNTS))) {
+        throw new IOException(this.path + " is truncated");
+      }
+      if (this.station < -1 || this.station >= cells) {
+        throw new IOException(this.path + " has its power station off the board");
+      }
+
+      PackedBoard board = new PackedBoard(this.width, this.height);
+      mapped.position(HEADER);
+      mapped.get(board.cells);
+      this.counted = counts != 0;
+      if (this.counted) {
+        this.powered = mapped.getInt();
+        this.solvedTiles = mapped.getInt();
+        this.turnsRemaining = mapped.getInt();
+        this.diameter = mapped.getInt();
+        this.radius = mapped.getInt();
+        this.spanning = mapped.getInt() != 0;
+        if (this.powered < 0 || this.powered > cells || this.solvedTiles < 0
+            || this.solvedTiles > cells || this.turnsRemaining < 0
+            || this.turnsRemaining > 3 * cells || this.diameter < 0 || this.diameter >= cells
+            || this.radius <= 0) {
+          throw new IOException(this.path + " has counts that do not fit its board");
+        }
+      }
+      if (this.station >= 0) {
+        board.setStation(this.station, true);
+      }
+      return board;
+    }
+  }
+
+  // loads the saved board into a GameEngine, from the counts saved with it
+  // if there are any, which spares searching the board
+  GameEngine loadEngine() throws IOException {
+    PackedBoard board = this.load();
+    if (this.counted) {
+      return new GameEngine(board, this);
+    }
+    else {
+      return new GameEngine(board, this.id());
+    }
+  }
+
+  // the id of the last board saved or loaded
+  BoardId id() {
+    return new BoardId(this.seed, this.width, this.height);
+  }
+}
+
+// the randomness of a board, all drawn from a single seed. Each draw is a
+// pure function of the seed, a stream and a position within the stream
+// (SplitMix64), so any part of a board can be generated on its own, in any
+// order or thread, and match a sequential generation bit for bit
+class BoardRandom {
+  // the streams used by board generation
+  static final long EDGE_WEIGHTS = 1;
+  static final long ROTATIONS = 2;
+  // the sequence a walking generator draws its choices from
+  static final long WALK = 3;
+
+  static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+  long seed;
+
+  // The Constructor
+  BoardRandom(long seed) {
+    this.seed = seed;
+  }
+
+  // SplitMix64's finalizer, scrambling the bits of the given value
+  static long mix(long z) {
+    z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+    z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+    return z ^ (z >>> 31);
+  }
+
+  // the random bits at the given position of the given stream
+  long next(long stream, long position) {
+    return mix(mix(this.seed + stream * GOLDEN_GAMMA) + (position + 1) * GOLDEN_GAMMA);
+  }
+
+  // a random int from 0 to bound - 1 at the given position of the given stream
+  int nextInt(long stream, long position, int bound) {
+    return (int) (((this.next(stream, position) >>> 33) * bound) >>> 31);
+  }
+
+  // an independent generator for the given stream
+  BoardRandom split(long stream) {
+    return new BoardRandom(this.next(stream, -1));
+  }
+
+  // the weight of the given edge, numbered as in GridEdges
+  int weight(long edge) {
+    return this.nextInt(EDGE_WEIGHTS, edge, GridEdges.MAX_WEIGHT);
+  }
+}
+
+// identifies a board: the same seed and size always generate the same board,
+// so a board can be cached or replayed from these three numbers alone
+class BoardId {
+  long seed;
+  int width;
+  int height;
+
+  // The Constructor
+  BoardId(long seed, int width, int height) {
+    this.seed = seed;
+    this.width = width;
+    this.height = height;
+  }
+
+  // generates the scrambled board, with the power station at (1, 1)
+  PackedBoard generate() {
+    return this.generate(new KruskalGenerator());
+  }
+
+  // generate, wiring the board with the given strategy
+  PackedBoard generate(BoardGenerator generator) {
+    BoardRandom rand = new BoardRandom(this.seed);
+    PackedBoard board = new PackedBoard(this.width, this.height);
+    board.setStation(0, true);
+    generator.generate(board, rand);
+    board.randomize(rand);
+    return board;
   }
 
-  // Compute a hashmap where each game piece from the edges list is mapped to
-  // itself
-  public HashMap<GamePiece, GamePiece> makeHashMap(ArrayList<Edge> list) {
-    HashMap<GamePiece, GamePiece> map = new HashMap<GamePiece, GamePiece>();
-    for (Edge edge : list) {
-      map.put(edge.fromNode, edge.fromNode);
-      map.put(edge.toNode, edge.toNode);
+  public boolean equals(Object other) {
+    if (!(other instanceof BoardId)) {
+      return false;
     }
-    return map;
+    BoardId that = (BoardId) other;
+    return this.seed == that.seed && this.width == that.width && this.height == that.height;
   }
 
-  // Find the root of a game piece within the map
-  public GamePiece find(HashMap<GamePiece, GamePiece> map, GamePiece edge) {
-    GamePiece root = edge;
-    while (!(map.get(root).equals(root))) {
-      root = map.get(root);
+  public int hashCode() {
+    return Long.hashCode(this.seed) * 31 * 31 + this.width * 31 + this.height;
+  }
+}
+
+// renders boards to PNG files without a window, in the look of
+// GamePiece.tileImage. Each image is split into stripes of tile rows that
+// are painted in parallel on a ForkJoinPool, straight into the int pixels
+// of a BufferedImage
+class BoardExporter {
+  // pixels per task
+  static final int GRAIN = 1 << 16;
+
+  ForkJoinPool pool;
+  TilePainter painter;
+  PowerPropagator propagator;
+  // the throughput of the last exportAll
+  double boardsPerSecond;
+
+  // The Constructor
+  BoardExporter(ForkJoinPool pool, int cellSize) {
+    this.pool = pool;
+    this.painter = new TilePainter(cellSize);
+    this.propagator = new BfsPropagator();
+    // every tile is rasterized up front, so the stripes only read them
+    for (int key = 0; key < TileSprites.KEYS; key++) {
+      this.painter.tile(key);
     }
-    return root;
   }
 
-  // Merges two subsets into one, linking one gamepiece to another
-  public void union(HashMap<GamePiece, GamePiece> map, GamePiece to, GamePiece from) {
-    map.put(map.get(to), from);
+  // an image of the given board, as it is powered now
+  BufferedImage render(PackedBoard board) {
+    int size = this.painter.size;
+    BufferedImage image = new BufferedImage(board.width * size, board.height * size,
+        BufferedImage.TYPE_INT_ARGB);
+    int[] raster = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    int rowPixels = Math.max(image.getWidth() * size, 1);
+    new ExportStripes(this.painter, board, raster, image.getWidth(), image.getHeight())
+        .invoke(this.pool, board.height, GRAIN / rowPixels);
+    return image;
   }
 
-  // Compare gamepiece with connected neighbors,
-  // update their state or properties
-  public void updateGamePieces(ArrayList<Edge> list) {
-    for (Edge edge : list) {
-      edge.fromNode.compare(edge.toNode);
+  // writes the given board, powered from its station, to the given file
+  void export(PackedBoard board, Path file) throws IOException {
+    this.propagator.propagate(board);
+    if (!ImageIO.write(this.render(board), "png", file.toFile())) {
+      throw new IOException("no PNG writer");
     }
   }
-}
 
-// class for Edge 
-class Edge {
-  GamePiece fromNode;
-  GamePiece toNode;
-  int weight;
+  // generates each board and writes it into the given directory, returning
+  // the files written
+  ArrayList<Path> exportAll(ArrayList<BoardId> ids, Path directory) throws IOException {
+    ArrayList<Path> files = new ArrayList<Path>();
+    long start = System.nanoTime();
+    for (BoardId id : ids) {
+      Path file = directory.resolve(this.fileName(id));
+      this.export(id.generate(), file);
+      files.add(file);
+    }
+    long elapsed = Math.max(System.nanoTime() - start, 1);
+    this.boardsPerSecond = ids.size() * 1e9 / elapsed;
+    return files;
+  }
 
-  // The Constructor
-  Edge(GamePiece fromNode, GamePiece toNode) {
-    this.fromNode = fromNode;
-    this.toNode = toNode;
-    this.weight = new Random().nextInt(25);
+  // loads the saved board and writes it into the given directory
+  Path export(BoardFile saved, Path directory) throws IOException {
+    PackedBoard board = saved.load();
+    Path file = directory.resolve(this.fileName(saved.id()));
+    this.export(board, file);
+    return file;
   }
 
-  // The Constructor
-  Edge(GamePiece fromNode, GamePiece toNode, int weight) {
-    this.fromNode = fromNode;
-    this.toNode = toNode;
-    this.weight = weight;
+  // the name of the image of the given board
+  String fileName(BoardId id) {
+    return "board-" + id.seed + "-" + id.width + "x" + id.height + ".png";
+  }
+
+  // exports count boards of the given size from consecutive seeds:
+  // directory count width height [cell size] [first seed]
+  public static void main(String[] args) throws IOException {
+    System.setProperty("java.awt.headless", "true");
+    Path directory = Path.of(args[0]);
+    int count = Integer.parseInt(args[1]);
+    int width = Integer.parseInt(args[2]);
+    int height = Integer.parseInt(args[3]);
+    int cellSize = args.length > 4 ? Integer.parseInt(args[4]) : Constants.CELL_SIZE;
+    long first = args.length > 5 ? Long.parseLong(args[5]) : 0;
+
+    ArrayList<BoardId> ids = new ArrayList<BoardId>();
+    for (int k = 0; k < count; k++) {
+      ids.add(new BoardId(first + k, width, height));
+    }
+    Files.createDirectories(directory);
+    BoardExporter exporter = new BoardExporter(ForkJoinPool.commonPool(), cellSize);
+    exporter.exportAll(ids, directory);
+    System.out.println(count + " boards, " + exporter.boardsPerSecond + " boards/s");
   }
 }
 
-//Union class
-class Union {
-  HashMap<GamePiece, GamePiece> representatives;
-  ArrayList<Edge> edgesInTree;
-  ArrayList<Edge> worklist;
+// paints the tiles of a range of board rows into an image raster
+class ExportStripes extends ParallelLoop {
+  TilePainter painter;
+  PackedBoard board;
+  int[] raster;
+  int width;
+  int height;
 
   // The Constructor
-  Union(ArrayList<Edge> worklist) {
-    this.representatives = new Utils().makeHashMap(worklist);
-    this.worklist = worklist;
-    this.edgesInTree = new ArrayList<Edge>();
+  ExportStripes(TilePainter painter, PackedBoard board, int[] raster, int width, int height) {
+    this.painter = painter;
+    this.board = board;
+    this.raster = raster;
+    this.width = width;
+    this.height = height;
   }
 
-  // compute the minimum spanning tree of a graph
-  // processes edges in ascending weight order
-  // connecting sets of nodes without forming cycles until all nodes are
-  // connected.
-  ArrayList<Edge> kruskalAlgo() {
-    Utils u = new Utils();
-    while (!worklist.isEmpty()) {
-      Edge cheapestEdge = worklist.get(0);
-      GamePiece fromRep = u.find(representatives, cheapestEdge.fromNode);
-      GamePiece toRep = u.find(representatives, cheapestEdge.toNode);
-
-      if (fromRep.equals(toRep)) {
-        worklist.remove(0);
-      }
-      else {
-        edgesInTree.add(worklist.remove(0));
-        u.union(representatives, fromRep, toRep);
+  void run(int lo, int hi) {
+    int size = this.painter.size;
+    for (int row = lo; row < hi; row++) {
+      for (int col = 0; col < this.board.width; col++) {
+        this.painter.paint(this.raster, this.width, this.height, col * size, row * size,
+            this.board.cells[this.board.index(col, row)]);
       }
     }
-    return edgesInTree;
-  }
-}
-
-//class for SortEdges, comparing the edges weight
-class SortEdges implements Comparator<Edge> {
-  public int compare(Edge edge1, Edge edge2) {
-    return edge1.weight - edge2.weight;
   }
 }
 
@@ -991,23 +4473,27 @@ class ExamplesLight {
 
     // tests counterclockwise
     world.onKeyEvent("left");
+    world.onTick();
     // check rotating left moves the power station left
     t.checkExpect(world.board.get(2).get(0).powerStation, false);
 
     // tests clockwise
     world.onKeyEvent("right");
+    world.onTick();
     // check rotating right moves the power station right
     t.checkExpect(world.board.get(0).get(0).powerStation, true);
     t.checkExpect(world.board.get(1).get(0).powerStation, false);
 
     // tests moving up
     world.onKeyEvent("up");
+    world.onTick();
     // tests moving power station up
     t.checkExpect(world.board.get(0).get(0).powerStation, true);
     t.checkExpect(world.board.get(0).get(1).powerStation, false);
 
     // tests moving down
     world.onKeyEvent("down");
+    world.onTick();
     // tests moving power station down
     t.checkExpect(world.board.get(0).get(0).powerStation, true);
     t.checkExpect(world.board.get(0).get(4).powerStation, false);
@@ -1212,6 +4698,1248 @@ class ExamplesLight {
     t.checkExpect(world.board.get(1).get(0).powered, false);
   }
 
+  // tests PackedBoard against the GamePieces it packs
+  void testPackedBoard(Tester t) {
+    Utils utils = new Utils();
+    ArrayList<ArrayList<GamePiece>> board = utils.initializeBoard(3, 2);
+    board.get(0).get(0).right = true;
+    board.get(1).get(0).left = true;
+    board.get(1).get(0).bottom = true;
+    PackedBoard packed = new PackedBoard(board, 3, 2);
+
+    // (1,1) is the power station, linked to its right
+    t.checkExpect(packed.isStation(0), true);
+    t.checkExpect(packed.wires(0), PackedBoard.RIGHT);
+    t.checkExpect(packed.connected(0, PackedBoard.EAST), true);
+    t.checkExpect(packed.connected(2, PackedBoard.WEST), true);
+    t.checkExpect(packed.connected(2, PackedBoard.DOWN), false);
+
+    // neighbors off the board
+    t.checkExpect(packed.neighbor(0, PackedBoard.UP), -1);
+    t.checkExpect(packed.neighbor(0, PackedBoard.WEST), -1);
+    t.checkExpect(packed.neighbor(5, PackedBoard.EAST), -1);
+    t.checkExpect(packed.neighbor(5, PackedBoard.DOWN), -1);
+    t.checkExpect(packed.neighbor(2, PackedBoard.DOWN), 3);
+
+    // rotating clockwise, left and bottom become top and left
+    packed.rotate(2);
+    t.checkExpect(packed.wires(2), PackedBoard.TOP | PackedBoard.LEFT);
+    t.checkExpect(packed.connected(0, PackedBoard.EAST), true);
+    // and once more, top and right
+    packed.rotate(2);
+    t.checkExpect(packed.wires(2), PackedBoard.TOP | PackedBoard.RIGHT);
+    t.checkExpect(packed.connected(0, PackedBoard.EAST), false);
+
+    // the view matches the packed cells
+    ArrayList<ArrayList<GamePiece>> view = packed.toPieces();
+    t.checkExpect(view.get(1).get(0).top, true);
+    t.checkExpect(view.get(1).get(0).right, true);
+    t.checkExpect(view.get(1).get(0).left, false);
+    t.checkExpect(view.get(1).get(0).row, 1);
+    t.checkExpect(view.get(1).get(0).col, 2);
+    t.checkExpect(view.get(0).get(0).powerStation, true);
+  }
+
+  // tests the BFS propagator against the original lightUp
+  void testPropagators(Tester t) {
+    LightEmAllWorld world = new LightEmAllWorld(6, 6, new Random(7));
+    PackedBoard fast = world.packed;
+    PackedBoard reference = new PackedBoard(6, 6);
+    Random rand = new Random(11);
+
+    for (int turn = 0; turn < 30; turn++) {
+      fast.rotate(rand.nextInt(36));
+      reference.cells = Arrays.copyOf(fast.cells, fast.cells.length);
+      int fastPowered = new BfsPropagator().propagate(fast);
+      int referencePowered = new ReferencePropagator().propagate(reference);
+      t.checkExpect(fastPowered, referencePowered);
+      t.checkExpect(Arrays.equals(fast.cells, reference.cells), true);
+    }
+
+    // the power station itself is always powered
+    t.checkExpect(fast.isPowered(fast.findStation()), true);
+  }
+
+  // tests incremental repowering against a full propagation
+  void testIncrementalPropagator(Tester t) {
+    LightEmAllWorld world = new LightEmAllWorld(8, 7, new Random(3));
+    PackedBoard board = world.packed;
+    PackedBoard check = new PackedBoard(8, 7);
+    Random rand = new Random(5);
+    boolean allMatch = true;
+
+    for (int turn = 0; turn < 400; turn++) {
+      if (turn % 10 == 0) {
+        // move the station wherever it can go
+        int station = board.findStation();
+        for (int direction = 0; direction < 4; direction++) {
+          if (board.connected(station, direction)) {
+            world.propagator.moveStation(board, station, board.neighbor(station, direction));
+            break;
+          }
+        }
+      }
+      else {
+        world.propagator.rotate(board, rand.nextInt(56));
+      }
+      check.cells = Arrays.copyOf(board.cells, board.cells.length);
+      new BfsPropagator().propagate(check);
+      allMatch = allMatch && Arrays.equals(board.cells, check.cells);
+    }
+    t.checkExpect(allMatch, true);
+
+    // clicking updates the view of every changed cell
+    board.writeTo(world.board);
+    world.onMouseClicked(new Posn(0, 0));
+    world.onTick();
+    for (int i = 0; i < world.nodes.size(); i++) {
+      t.checkExpect(world.nodes.get(i).powered, board.isPowered(i));
+    }
+  }
+
+  // tests DisjointSet
+  void testDisjointSet(Tester t) {
+    DisjointSet sets = new DisjointSet(5);
+    t.checkExpect(sets.find(3), 3);
+
+    t.checkExpect(sets.union(0, 1), true);
+    t.checkExpect(sets.union(2, 3), true);
+    t.checkExpect(sets.find(0), sets.find(1));
+    t.checkExpect(sets.find(0) == sets.find(2), false);
+
+    // joining the two pairs
+    t.checkExpect(sets.union(1, 3), true);
+    t.checkExpect(sets.find(0), sets.find(3));
+    // already joined
+    t.checkExpect(sets.union(0, 2), false);
+    t.checkExpect(sets.find(4), 4);
+
+    // equal ranks grow the rank of the new root
+    t.checkExpect(sets.rank[sets.find(0)], (byte) 2);
+  }
+
+  // tests GridEdges
+  void testGridEdges(Tester t) {
+    GridEdges edges = new GridEdges(3, 2, new BoardRandom(4));
+    // 3 edges inside the columns, 4 between them
+    t.checkExpect(edges.size(), 7);
+    t.checkExpect(edges.from[0], 0);
+    t.checkExpect(edges.to[0], 1);
+    t.checkExpect(edges.from[3], 0);
+    t.checkExpect(edges.to[3], 2);
+    t.checkExpect(edges.from[6], 3);
+    t.checkExpect(edges.to[6], 5);
+
+    // sorted by weight, ties in edge order
+    int[] order = edges.sortedByWeight();
+    boolean sorted = true;
+    for (int i = 1; i < order.length; i++) {
+      sorted = sorted && (edges.weight[order[i - 1]] < edges.weight[order[i]]
+          || edges.weight[order[i - 1]] == edges.weight[order[i]] && order[i - 1] < order[i]);
+    }
+    t.checkExpect(sorted, true);
+
+    // createEdges makes one edge per pair of neighbors, weighed the same
+    // every time
+    Utils utils = new Utils();
+    ArrayList<Edge> first = utils.createEdges(utils.initializeBoard(3, 3), 3, 3);
+    ArrayList<Edge> second = utils.createEdges(utils.initializeBoard(3, 3), 3, 3);
+    t.checkExpect(first.size(), 12);
+    for (int i = 0; i < first.size(); i++) {
+      t.checkExpect(first.get(i).weight, second.get(i).weight);
+      t.checkExpect(first.get(i).fromNode.row, second.get(i).fromNode.row);
+      t.checkExpect(first.get(i).fromNode.col, second.get(i).fromNode.col);
+    }
+  }
+
+  // tests KruskalGenerator
+  void testKruskalGenerator(Tester t) {
+    PackedBoard board = new PackedBoard(7, 5);
+    board.setStation(0, true);
+    new KruskalGenerator().generate(board, new BoardRandom(9));
+
+    // a spanning tree has one fewer edge than cells, each with two ends
+    int ends = 0;
+    for (int i = 0; i < board.cells.length; i++) {
+      ends += Integer.bitCount(board.wires(i));
+    }
+    t.checkExpect(ends, 2 * (35 - 1));
+    // and reaches every cell
+    t.checkExpect(new BfsPropagator().propagate(board), 35);
+  }
+
+  // tests that boards are reproducible from their seed
+  void testBoardId(Tester t) {
+    BoardId id = new BoardId(42, 9, 6);
+    t.checkExpect(Arrays.equals(id.generate().cells, id.generate().cells), true);
+    t.checkExpect(Arrays.equals(id.generate().cells, new BoardId(43, 9, 6).generate().cells),
+        false);
+    t.checkExpect(id.equals(new BoardId(42, 9, 6)), true);
+    t.checkExpect(id.hashCode(), new BoardId(42, 9, 6).hashCode());
+    t.checkExpect(id.equals(new BoardId(42, 6, 9)), false);
+
+    // worlds built from the same id match
+    t.checkExpect(Arrays.equals(new LightEmAllWorld(id).packed.cells,
+        new LightEmAllWorld(id).packed.cells), true);
+
+    // draws depend only on their stream and position, not on order
+    BoardRandom rand = new BoardRandom(7);
+    int last = rand.weight(100);
+    rand.weight(3);
+    t.checkExpect(rand.weight(100), last);
+    t.checkExpect(new BoardRandom(7).weight(100), last);
+    t.checkExpect(rand.nextInt(BoardRandom.ROTATIONS, 5, 4) < 4, true);
+
+    // createEdges weighs edges as GridEdges does
+    Utils utils = new Utils();
+    GridEdges edges = new GridEdges(3, 3, rand);
+    int total = 0;
+    for (Edge edge : utils.createEdges(utils.initializeBoard(3, 3), 3, 3, rand)) {
+      total += edge.weight;
+    }
+    int expected = 0;
+    for (int e = 0; e < edges.size(); e++) {
+      expected += edges.weight[e];
+    }
+    t.checkExpect(total, expected);
+  }
+
+  // tests that the parallel generator wires the same tree as Kruskal
+  void testParallelBoruvkaGenerator(Tester t) {
+    ParallelBoruvkaGenerator parallel = new ParallelBoruvkaGenerator(new ForkJoinPool(4));
+    int[][] sizes = { { 1, 1 }, { 1, 9 }, { 9, 1 }, { 5, 5 }, { 40, 23 }, { 300, 200 } };
+    for (int[] size : sizes) {
+      for (long seed = 0; seed < 3; seed++) {
+        PackedBoard expected = new PackedBoard(size[0], size[1]);
+        new KruskalGenerator().generate(expected, new BoardRandom(seed));
+        PackedBoard actual = new PackedBoard(size[0], size[1]);
+        parallel.generate(actual, new BoardRandom(seed));
+        t.checkExpect(Arrays.equals(actual.cells, expected.cells), true);
+      }
+    }
+
+    // scrambling in parallel matches scrambling in order
+    BoardId id = new BoardId(8, 60, 70);
+    PackedBoard scrambled = new PackedBoard(60, 70);
+    scrambled.setStation(0, true);
+    parallel.generateScrambled(scrambled, new BoardRandom(8));
+    t.checkExpect(Arrays.equals(scrambled.cells, id.generate().cells), true);
+  }
+
+  // tests that every BoardGenerator wires a spanning tree
+  void testBoardGenerators(Tester t) {
+    BoardGenerator[] generators = { new KruskalGenerator(), new ParallelBoruvkaGenerator(),
+        new PrimGenerator(), new WilsonGenerator(), new DfsGenerator() };
+    int[][] sizes = { { 1, 1 }, { 1, 7 }, { 6, 1 }, { 2, 2 }, { 13, 9 }, { 50, 40 } };
+    for (BoardGenerator generator : generators) {
+      for (int[] size : sizes) {
+        int cells = size[0] * size[1];
+        BoardId id = new BoardId(21, size[0], size[1]);
+        PackedBoard board = new PackedBoard(size[0], size[1]);
+        board.setStation(0, true);
+        generator.generate(board, new BoardRandom(21));
+
+        int ends = 0;
+        for (int i = 0; i < cells; i++) {
+          ends += Integer.bitCount(board.wires(i));
+        }
+        t.checkExpect(ends, 2 * (cells - 1));
+        t.checkExpect(new BfsPropagator().propagate(board), cells);
+        // and the same seed gives the same board
+        t.checkExpect(Arrays.equals(id.generate(generator).cells, id.generate(generator).cells),
+            true);
+      }
+    }
+
+    // edge numbering agrees with GridEdges
+    PackedBoard board = new PackedBoard(4, 3);
+    GridEdges edges = new GridEdges(4, 3, new BoardRandom(0));
+    for (int e = 0; e < edges.size(); e++) {
+      t.checkExpect(board.edgeFrom(e), edges.from[e]);
+      t.checkExpect(board.edgeTo(e), edges.to[e]);
+      t.checkExpect(board.edge(edges.from[e], edges.to[e] == edges.from[e] + 1
+          ? PackedBoard.DOWN : PackedBoard.EAST), e);
+      t.checkExpect(board.edge(edges.to[e], edges.to[e] == edges.from[e] + 1
+          ? PackedBoard.UP : PackedBoard.WEST), e);
+    }
+  }
+
+  // tests StreamingGenerator through a temporary file
+  void testStreamingGenerator(Tester t) throws IOException {
+    BoardFile file = new BoardFile(Files.createTempFile("board", ".lea"));
+    BoardId id = new BoardId(17, 37, 23);
+    BoardRandom rand = new BoardRandom(17);
+    try {
+      new StreamingGenerator(5).generate(id, file, false);
+      PackedBoard board = file.load();
+      t.checkExpect(file.id().equals(id), true);
+      t.checkExpect(board.cells.length, 37 * 23);
+      t.checkExpect(board.findStation(), 0);
+
+      // a single spanning tree
+      int ends = 0;
+      for (int i = 0; i < board.cells.length; i++) {
+        ends += Integer.bitCount(board.wires(i));
+      }
+      t.checkExpect(ends, 2 * (37 * 23 - 1));
+      t.checkExpect(new BfsPropagator().propagate(board), 37 * 23);
+
+      // scrambled the same way BoardId scrambles
+      byte[] wired = file.load().cells;
+      new StreamingGenerator(5).generate(id, file, true);
+      byte[] scrambled = file.load().cells;
+      boolean same = true;
+      for (int i = 0; i < wired.length; i++) {
+        same = same && scrambled[i] == PackedBoard.rotated(wired[i],
+            rand.nextInt(BoardRandom.ROTATIONS, i, 4));
+      }
+      t.checkExpect(same, true);
+
+      // with a single band too
+      new StreamingGenerator(100).generate(id, file, false);
+      t.checkExpect(new BfsPropagator().propagate(file.load()), 37 * 23);
+    }
+    finally {
+      Files.delete(file.path);
+    }
+  }
+
+  // tests saving and loading a BoardFile
+  void testBoardFile(Tester t) throws IOException {
+    BoardFile file = new BoardFile(Files.createTempFile("board", ".lea"));
+    try {
+      LightEmAllWorld world = new LightEmAllWorld(new BoardId(5, 12, 9));
+      world.onKeyEvent("down");
+      world.onTick();
+      file.save(world.packed, world.id.seed);
+      t.checkExpect(Files.size(file.path), (long) BoardFile.HEADER + 12 * 9);
+
+      BoardFile loaded = new BoardFile(file.path);
+      PackedBoard board = loaded.load();
+      t.checkExpect(Arrays.equals(board.cells, world.packed.cells), true);
+      t.checkExpect(loaded.id().equals(world.id), true);
+      t.checkExpect(loaded.station, world.packed.findStation());
+      t.checkExpect(Arrays.equals(new LightEmAllWorld(loaded).packed.cells, board.cells), true);
+
+      // a station away from the first tile is where the loaded board is
+      // powered from
+      world.packed.setStation(world.packed.findStation(), false);
+      world.packed.setStation(40, true);
+      file.save(world.packed, world.id.seed);
+      PackedBoard moved = loaded.load();
+      t.checkExpect(loaded.station, 40);
+      t.checkExpect(moved.station, 40);
+      t.checkExpect(moved.findStation(), 40);
+      GameEngine engine = new GameEngine(moved, loaded.id());
+      t.checkExpect(engine.station(), 40);
+      t.checkExpect(moved.isPowered(40), true);
+
+      // saved with its engine's counts, a board is played again without
+      // searching it, and the first move builds the tree power flows through
+      LightEmAllWorld played = new LightEmAllWorld(new BoardId(6, 12, 9));
+      played.engine.rotate(3);
+      file.save(played.engine);
+      t.checkExpect(Files.size(file.path), (long) BoardFile.HEADER + 12 * 9 + BoardFile.COUNTS);
+      BoardFile counts = new BoardFile(file.path);
+      GameEngine quick = counts.loadEngine();
+      t.checkExpect(counts.counted, true);
+      t.checkExpect(quick.propagator.built(quick.board), false);
+      t.checkExpect(Arrays.equals(quick.board.cells, played.packed.cells), true);
+      t.checkExpect(quick.poweredCount(), played.engine.poweredCount());
+      t.checkExpect(quick.solvedTiles, played.engine.solvedTiles);
+      t.checkExpect(quick.turnsRemaining, played.engine.turnsRemaining);
+      t.checkExpect(quick.diameter, played.engine.diameter);
+      t.checkExpect(quick.spanning, played.engine.spanning);
+      t.checkExpect(quick.radiusMode(), false);
+
+      LightEmAllWorld reloaded = new LightEmAllWorld(counts);
+      t.checkExpect(reloaded.engine.propagator.built(reloaded.packed), false);
+      t.checkExpect(reloaded.radius, played.radius);
+      reloaded.onMouseClicked(new Posn(Constants.CELL_SIZE / 2, Constants.CELL_SIZE * 3 / 2));
+      reloaded.onTick();
+      played.engine.rotate(1);
+      t.checkExpect(reloaded.engine.propagator.built(reloaded.packed), true);
+      t.checkExpect(Arrays.equals(reloaded.packed.cells, played.packed.cells), true);
+      t.checkExpect(reloaded.engine.poweredCount(), played.engine.poweredCount());
+      t.checkExpect(reloaded.engine.changed()[0], 1);
+
+      // as is radius mode, with the power it limits
+      played.engine.setRadiusMode(true);
+      file.save(played.engine);
+      GameEngine limited = counts.loadEngine();
+      t.checkExpect(limited.radiusMode(), true);
+      t.checkExpect(limited.poweredCount(), played.engine.poweredCount());
+      limited.rotate(4);
+      played.engine.rotate(4);
+      t.checkExpect(Arrays.equals(limited.board.cells, played.packed.cells), true);
+      t.checkExpect(limited.poweredCount(), played.engine.poweredCount());
+
+      // a board saved without counts is searched as before, and so is a
+      // version 1 file, which never has them
+      file.save(played.packed, played.id.seed);
+      t.checkExpect(counts.loadEngine().propagator.built(played.packed), true);
+      t.checkExpect(counts.counted, false);
+      ByteBuffer first = ByteBuffer.allocate(BoardFile.HEADER + 12 * 9);
+      first.putInt(BoardFile.MAGIC).putInt(1).putInt(12).putInt(9).putLong(6).putInt(0);
+      first.position(BoardFile.HEADER);
+      first.put(played.packed.cells);
+      Files.write(file.path, first.array());
+      t.checkExpect(Arrays.equals(counts.load().cells, played.packed.cells), true);
+      t.checkExpect(counts.counted, false);
+
+      // the turns back to the solution survive, and undo the scrambling
+      PackedBoard solved = new PackedBoard(12, 9);
+      new KruskalGenerator().generate(solved, new BoardRandom(5));
+      for (int i = 0; i < board.cells.length; i++) {
+        t.checkExpect(board.solvedWires(i), solved.wires(i));
+      }
+
+      // as is a header whose size is not positive, or whose cells overflow
+      // an int and so could pass for the length of the file
+      int[][] sizes = new int[][] { { 0, 9 }, { -12, -9 }, { 65536, 65536 + 1 } };
+      for (int[] size : sizes) {
+        ByteBuffer header = ByteBuffer.allocate(BoardFile.HEADER + 12 * 9);
+        header.putInt(BoardFile.MAGIC).putInt(BoardFile.VERSION).putInt(size[0]).putInt(size[1])
+            .putLong(5).putInt(0);
+        Files.write(file.path, header.array());
+        boolean rejected = false;
+        try {
+          loaded.load();
+        }
+        catch (IOException e) {
+          rejected = true;
+        }
+        t.checkExpect(rejected, true);
+      }
+
+      // as are counts in a version 1 file, or counts that cannot be right
+      // for the board
+      int[][] versions = new int[][] { { 1, 0 }, { BoardFile.VERSION, -1 },
+          { BoardFile.VERSION, 12 * 9 + 1 } };
+      for (int[] version : versions) {
+        ByteBuffer counted = ByteBuffer.allocate(BoardFile.HEADER + 12 * 9 + BoardFile.COUNTS);
+        counted.putInt(BoardFile.MAGIC).putInt(version[0]).putInt(12).putInt(9).putLong(6)
+            .putInt(0);
+        counted.position(BoardFile.HEADER + 12 * 9);
+        counted.putInt(version[1]).putInt(0).putInt(0).putInt(0).putInt(Integer.MAX_VALUE)
+            .putInt(1);
+        Files.write(file.path, counted.array());
+        boolean rejected = false;
+        try {
+          loaded.load();
+        }
+        catch (IOException e) {
+          rejected = true;
+        }
+        t.checkExpect(rejected, true);
+      }
+
+      // anything else is refused
+      Files.write(file.path, new byte[40]);
+      boolean refused = false;
+      try {
+        loaded.load();
+      }
+      catch (IOException e) {
+        refused = true;
+      }
+      t.checkExpect(refused, true);
+    }
+    finally {
+      Files.delete(file.path);
+    }
+  }
+
+  // tests TileSprites
+  void testTileSprites(Tester t) {
+    TileSprites sprites = new TileSprites(50);
+    WorldImage cross = sprites.sprite(PackedBoard.WIRES);
+    t.checkExpect(cross.getWidth(), 50.0);
+    t.checkExpect(cross.getHeight(), 50.0);
+
+    // built once, and shared by every cell in the same state
+    t.checkExpect(sprites.sprite(PackedBoard.WIRES) == cross, true);
+    t.checkExpect(sprites.sprite(PackedBoard.WIRES | (3 << PackedBoard.SOLVE_SHIFT)) == cross,
+        true);
+    t.checkExpect(sprites.sprite(PackedBoard.WIRES | PackedBoard.POWERED) == cross, false);
+
+    // one sprite for each tile state at most, however large the board
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(3, 30, 30));
+    world.retained = null;
+    world.makeScene();
+    int built = 0;
+    for (WorldImage sprite : world.sprites.sprites) {
+      if (sprite != null) {
+        built++;
+      }
+    }
+    t.checkExpect(built <= TileSprites.KEYS, true);
+    t.checkExpect(built > 2, true);
+  }
+
+  // tests Camera
+  void testCamera(Tester t) {
+    Camera camera = new Camera(100, 80, 500, 400, 50);
+    t.checkExpect(camera.cellAt(0, 0), 0);
+    t.checkExpect(camera.cellAt(120, 60), 2 * 80 + 1);
+    t.checkExpect(camera.cellAt(500, 0), -1);
+    t.checkExpect(camera.lastColumn(), 10);
+    t.checkExpect(camera.lastRow(), 8);
+
+    // panning moves what is under a pixel, but never off the board
+    camera.pan(3, 2);
+    t.checkExpect(camera.cellAt(0, 0), 3 * 80 + 2);
+    camera.pan(-10, -10);
+    t.checkExpect(camera.cellAt(0, 0), 0);
+    camera.pan(1000, 1000);
+    t.checkExpect(camera.cellAt(499, 399), 100 * 80 - 1);
+    t.checkExpect(camera.onKey("a"), true);
+    t.checkExpect(camera.onKey("up"), false);
+
+    // zooming keeps the center in place
+    camera.pan(-50, -40);
+    int center = camera.cellAt(250, 200);
+    camera.zoom(false);
+    t.checkExpect(camera.cellSize, 25);
+    t.checkExpect(camera.cellAt(250, 200), center);
+    camera.zoom(true);
+    t.checkExpect(camera.cellAt(250, 200), center);
+    for (int i = 0; i < 10; i++) {
+      camera.zoom(false);
+    }
+    t.checkExpect(camera.cellSize, Camera.MIN_CELL);
+    // zoomed out past the board, nothing is there
+    t.checkExpect(camera.cellAt(499, 399), -1);
+  }
+
+  // tests that a large board only paints the tiles in the window
+  void testViewport(Tester t) {
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(2, 300, 200));
+    t.checkExpect(world.camera.viewWidth, Constants.VIEW_WIDTH);
+    world.makeScene();
+    t.checkExpect(world.retained.painted, 20 * 14);
+
+    // clicks go through the camera, and are played on the next tick
+    world.onKeyEvent("d");
+    int cell = world.camera.cellAt(10, 10);
+    int turns = world.packed.turnsToSolve(cell);
+    world.onMouseClicked(new Posn(10, 10));
+    t.checkExpect(world.packed.turnsToSolve(cell), turns);
+    world.onTick();
+    t.checkExpect(world.packed.turnsToSolve(cell), (turns + 3) & 3);
+    world.makeScene();
+    t.checkExpect(world.retained.painted, 20 * 14);
+
+    // only what changed in the window is repainted
+    world.onMouseClicked(new Posn(10, 10));
+    world.onTick();
+    int dirty = world.packed.dirty.count;
+    world.makeScene();
+    t.checkExpect(world.retained.painted >= 1, true);
+    t.checkExpect(world.retained.painted <= dirty, true);
+  }
+
+  // tests that the retained scene only repaints what changed
+  void testRetainedScene(Tester t) {
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(8, 6, 5));
+    world.makeScene();
+    t.checkExpect(world.retained.painted, 30);
+
+    // nothing changed
+    world.makeScene();
+    t.checkExpect(world.retained.painted, 0);
+
+    // a click repaints the tiles it changed, each once
+    world.onMouseClicked(new Posn(60, 60));
+    world.onTick();
+    int dirty = world.packed.dirty.count;
+    t.checkExpect(dirty >= 1, true);
+    t.checkExpect(world.packed.dirty.marked[world.packed.index(1, 1)], true);
+    world.makeScene();
+    t.checkExpect(world.retained.painted, dirty);
+    t.checkExpect(world.packed.dirty.count, 0);
+
+    // unchanged cells are never marked
+    world.packed.setPowered(0, world.packed.isPowered(0));
+    t.checkExpect(world.packed.dirty.count, 0);
+    world.packed.setPowered(0, !world.packed.isPowered(0));
+    world.packed.setPowered(0, !world.packed.isPowered(0));
+    t.checkExpect(world.packed.dirty.count, 1);
+
+    // past the list limit, every cell is dirty instead
+    DirtyCells many = new DirtyCells(DirtyCells.LIST_LIMIT + 1);
+    many.clear();
+    for (int i = 0; i < DirtyCells.LIST_LIMIT; i++) {
+      many.mark(i);
+    }
+    t.checkExpect(many.count, DirtyCells.LIST_LIMIT);
+    t.checkExpect(many.all, false);
+    many.mark(DirtyCells.LIST_LIMIT);
+    t.checkExpect(many.count, 0);
+    t.checkExpect(many.all, true);
+    t.checkExpect(many.marked[0], false);
+
+    // zoomed out, the background fills the window around the board, and
+    // each color is pushed as one shared Color
+    world.onKeyEvent("-");
+    world.makeScene();
+    RetainedScene retained = world.retained;
+    Camera view = world.camera;
+    t.checkExpect(view.screenX(view.lastColumn()) < view.viewWidth, true);
+    t.checkExpect(retained.frame[retained.frame.length - 1], RetainedScene.FRAME_BACKGROUND);
+    t.checkExpect(retained.frame[0], TilePainter.FRAME);
+    t.checkExpect(retained.color(TilePainter.BACKGROUND) == retained.color(TilePainter.BACKGROUND),
+        true);
+    for (int k = 0; k < retained.paletteSize; k++) {
+      for (int j = 0; j < k; j++) {
+        t.checkExpect(retained.palette[j] != retained.palette[k], true);
+      }
+    }
+  }
+
+  // tests TilePainter against the look of tileImage
+  void testTilePainter(Tester t) {
+    TilePainter painter = new TilePainter(20);
+    int gray = Color.GRAY.getRGB();
+    int yellow = Color.YELLOW.getRGB();
+    int[] tile = painter.tile(PackedBoard.TOP | PackedBoard.RIGHT);
+
+    // a frame around a dark gray tile
+    t.checkExpect(tile[0], TilePainter.FRAME);
+    t.checkExpect(tile[20 * 20 - 1], TilePainter.FRAME);
+    t.checkExpect(tile[2 * 20 + 2], TilePainter.BACKGROUND);
+    // wires from the middle to the top and right, but not the bottom or left
+    t.checkExpect(tile[10 * 20 + 10], gray);
+    t.checkExpect(tile[2 * 20 + 10], gray);
+    t.checkExpect(tile[10 * 20 + 17], gray);
+    t.checkExpect(tile[17 * 20 + 10], TilePainter.BACKGROUND);
+    t.checkExpect(tile[10 * 20 + 2], TilePainter.BACKGROUND);
+    // powered wires are yellow, and the same tile is only rasterized once
+    t.checkExpect(painter.tile(PackedBoard.TOP | PackedBoard.POWERED)[2 * 20 + 10], yellow);
+    t.checkExpect(painter.tile(PackedBoard.TOP | PackedBoard.RIGHT) == tile, true);
+    // the station is drawn over the middle
+    t.checkExpect(painter.tile(PackedBoard.STATION)[10 * 20 + 10], new Color(0, 255, 255).getRGB());
+
+    // painting is clipped to the raster
+    int[] raster = new int[30 * 30];
+    painter.paint(raster, 30, 30, 15, -5, PackedBoard.TOP | PackedBoard.RIGHT);
+    t.checkExpect(raster[0], 0);
+    t.checkExpect(raster[0 * 30 + 15 + 2], tile[5 * 20 + 2]);
+    t.checkExpect(raster[14 * 30 + 29], tile[19 * 20 + 14]);
+    t.checkExpect(raster[15 * 30 + 29], 0);
+
+    // and the retained scene shows exactly those pixels
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(4, 3, 3));
+    ComputedPixelImage image = (ComputedPixelImage) world.retained.present();
+    int[] corner = world.retained.painter.tile(world.packed.cells[0]);
+    t.checkExpect(image.getPixel(12, 3).getRGB(), corner[3 * 50 + 12]);
+    t.checkExpect(image.getPixel(25, 25).getRGB(), corner[25 * 50 + 25]);
+  }
+
+  // tests BoardExporter
+  void testBoardExporter(Tester t) throws IOException {
+    BoardExporter exporter = new BoardExporter(new ForkJoinPool(3), 10);
+    BoardId id = new BoardId(6, 7, 5);
+    PackedBoard board = id.generate();
+    new BfsPropagator().propagate(board);
+
+    // the stripes paint every tile, wherever the task boundaries fall
+    BufferedImage image = exporter.render(board);
+    t.checkExpect(image.getWidth(), 70);
+    t.checkExpect(image.getHeight(), 50);
+    boolean same = true;
+    for (int col = 0; col < 7; col++) {
+      for (int row = 0; row < 5; row++) {
+        int[] tile = exporter.painter.tile(board.cells[board.index(col, row)]);
+        for (int k = 0; k < 100; k++) {
+          same = same && image.getRGB(col * 10 + k % 10, row * 10 + k / 10) == tile[k];
+        }
+      }
+    }
+    t.checkExpect(same, true);
+
+    // and the files read back as the same pixels
+    Path directory = Files.createTempDirectory("boards");
+    ArrayList<BoardId> ids = new ArrayList<BoardId>(Arrays.asList(id, new BoardId(7, 3, 3)));
+    ArrayList<Path> files = exporter.exportAll(ids, directory);
+    t.checkExpect(files.get(0).getFileName().toString(), "board-6-7x5.png");
+    t.checkExpect(exporter.boardsPerSecond > 0, true);
+    BufferedImage read = ImageIO.read(files.get(0).toFile());
+    t.checkExpect(read.getRGB(35, 25), image.getRGB(35, 25));
+    t.checkExpect(read.getRGB(69, 0), image.getRGB(69, 0));
+    for (Path file : files) {
+      Files.delete(file);
+    }
+    Files.delete(directory);
+  }
+
+  // tests GameEngine, played without a world
+  void testGameEngine(Tester t) {
+    BoardId id = new BoardId(11, 6, 4);
+    GameEngine engine = new GameEngine(id);
+    LightEmAllWorld world = new LightEmAllWorld(id);
+    t.checkExpect(Arrays.equals(engine.snapshot(), world.packed.cells), true);
+    t.checkExpect(engine.snapshot() != engine.board.cells, true);
+
+    // the same moves give the same board as the world's clicks and keys
+    t.checkExpect(engine.rotate(2, 3), true);
+    world.onMouseClicked(new Posn(2 * Constants.CELL_SIZE + 5, 3 * Constants.CELL_SIZE + 5));
+    world.onTick();
+    t.checkExpect(Arrays.equals(engine.snapshot(), world.packed.cells), true);
+    t.checkExpect(engine.rotate(6, 0), false);
+    t.checkExpect(engine.rotate(0, -1), false);
+    t.checkExpect(engine.changedCount() >= 1, true);
+    t.checkExpect(engine.changed()[0], engine.board.index(2, 3));
+
+    // solving every tile powers the whole board
+    for (int i = 0; i < engine.board.cells.length; i++) {
+      for (int turns = engine.board.turnsToSolve(i); turns > 0; turns--) {
+        engine.rotate(i);
+      }
+    }
+    t.checkExpect(engine.isSolved(), true);
+    t.checkExpect(engine.poweredCount(), 24);
+    int station = engine.board.findStation();
+    // the station starts in the top left corner, with no way up
+    t.checkExpect(station, 0);
+    t.checkExpect(engine.moveStation(PackedBoard.UP), false);
+    int direction = engine.board.connected(station, PackedBoard.EAST) ? PackedBoard.EAST
+        : PackedBoard.DOWN;
+    t.checkExpect(engine.moveStation(direction), true);
+    t.checkExpect(engine.board.findStation(), engine.board.neighbor(station, direction));
+    t.checkExpect(engine.isSolved(), true);
+  }
+
+  // tests the powered count kept by IncrementalPropagator
+  void testPoweredCount(Tester t) {
+    GameEngine engine = new GameEngine(new BoardId(12, 9, 7));
+    Random rand = new Random(12);
+    boolean agrees = true;
+    for (int move = 0; move < 400; move++) {
+      if (rand.nextInt(4) == 0) {
+        engine.moveStation(rand.nextInt(4));
+      }
+      else {
+        engine.rotate(rand.nextInt(engine.size()));
+      }
+      int count = 0;
+      for (int i = 0; i < engine.size(); i++) {
+        if (engine.board.isPowered(i)) {
+          count++;
+        }
+      }
+      agrees = agrees && engine.poweredCount() == count;
+    }
+    t.checkExpect(agrees, true);
+    t.checkExpect(engine.size(), 63);
+    t.checkExpect(engine.propagator.propagate(engine.board), engine.poweredCount());
+  }
+
+  // tests the station and neighbors PackedBoard keeps
+  void testStationTracking(Tester t) {
+    PackedBoard board = new PackedBoard(3, 2);
+    t.checkExpect(board.findStation(), -1);
+    // a station written straight into the cells is found by a scan
+    board.cells[4] = PackedBoard.STATION;
+    t.checkExpect(board.findStation(), 4);
+    t.checkExpect(board.station, 4);
+    board.setStation(4, false);
+    board.setStation(1, true);
+    t.checkExpect(board.station, 1);
+    t.checkExpect(board.findStation(), 1);
+
+    // the table agrees with the board's geometry
+    int[] table = board.neighborTable();
+    t.checkExpect(table.length, 24);
+    t.checkExpect(Arrays.equals(Arrays.copyOfRange(table, 0, 4), new int[] { -1, 2, 1, -1 }),
+        true);
+    t.checkExpect(Arrays.equals(Arrays.copyOfRange(table, 12, 16), new int[] { 2, 5, -1, 1 }),
+        true);
+    t.checkExpect(Arrays.equals(Arrays.copyOfRange(table, 20, 24), new int[] { 4, -1, -1, 3 }),
+        true);
+    boolean agrees = true;
+    for (int i = 0; i < 24; i++) {
+      agrees = agrees && table[i] == board.neighbor(i >> 2, i & 3);
+    }
+    t.checkExpect(agrees, true);
+
+    // the world keeps the station's row and column as it moves
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(13, 5, 5));
+    t.checkExpect(world.powerRow, 1);
+    t.checkExpect(world.powerCol, 1);
+    for (int i = 0; i < world.packed.cells.length; i++) {
+      for (int turns = world.packed.turnsToSolve(i); turns > 0; turns--) {
+        world.engine.rotate(i);
+      }
+    }
+    String key = world.packed.connected(0, PackedBoard.EAST) ? "right" : "down";
+    world.onKeyEvent(key);
+    world.onTick();
+    t.checkExpect(world.powerCol + world.powerRow, 3);
+    t.checkExpect(world.packed.index(world.powerCol - 1, world.powerRow - 1),
+        world.engine.station());
+  }
+
+  // tests the solution GameEngine keeps track of
+  void testSolvedTiles(Tester t) {
+    // a straight matches its solution after two turns as well as four
+    PackedBoard straight = new PackedBoard(1, 1);
+    straight.cells[0] = PackedBoard.rotated((byte) (PackedBoard.TOP | PackedBoard.BOTTOM), 1);
+    t.checkExpect(straight.turnsToSolve(0), 3);
+    t.checkExpect(straight.turnsToMatch(0), 1);
+    straight.rotate(0);
+    t.checkExpect(straight.turnsToSolve(0), 2);
+    t.checkExpect(straight.turnsToMatch(0), 0);
+
+    GameEngine engine = new GameEngine(new BoardId(14, 8, 6));
+    Random rand = new Random(14);
+    boolean agrees = true;
+    for (int move = 0; move < 300; move++) {
+      engine.rotate(rand.nextInt(engine.size()));
+      int solved = 0;
+      int turns = 0;
+      for (int i = 0; i < engine.size(); i++) {
+        solved += engine.board.turnsToMatch(i) == 0 ? 1 : 0;
+        turns += engine.board.turnsToMatch(i);
+      }
+      agrees = agrees && solved == engine.solvedTiles && turns == engine.turnsRemaining;
+    }
+    t.checkExpect(agrees, true);
+
+    // rotating each tile its remaining turns solves the board
+    for (int i = 0; i < engine.size(); i++) {
+      for (int turns = engine.board.turnsToMatch(i); turns > 0; turns--) {
+        engine.rotate(i);
+      }
+    }
+    t.checkExpect(engine.turnsRemaining, 0);
+    t.checkExpect(engine.matchesSolution(), true);
+    t.checkExpect(engine.isSolved(), true);
+
+    // and the world keeps the tree it was generated from
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(14, 8, 6));
+    ArrayList<Edge> mst = world.solution();
+    t.checkExpect(mst.size(), 47);
+    t.checkExpect(mst.get(0).fromNode, world.nodes.get(0));
+  }
+
+  // tests BoardSolver
+  void testBoardSolver(Tester t) {
+    BoardSolver solver = new BoardSolver();
+    for (long seed = 0; seed < 20; seed++) {
+      LightEmAllWorld world = new LightEmAllWorld(new BoardId(seed, 3 + (int) seed % 7, 4));
+      int[] turns = solver.solve(world.packed);
+      world.engine.applyTurns(turns);
+      t.checkExpect(world.engine.isSolved(), true);
+    }
+
+    // any generator's boards, rotated to every tile, with no wire left hanging
+    BoardId id = new BoardId(20, 30, 30);
+    GameEngine engine = new GameEngine(id.generate(new WilsonGenerator()), id);
+    engine.applyTurns(solver.solve(engine.board));
+    t.checkExpect(engine.isSolved(), true);
+    int ends = 0;
+    for (int i = 0; i < engine.size(); i++) {
+      ends += Integer.bitCount(engine.board.wires(i));
+      for (int direction = 0; direction < 4; direction++) {
+        if ((engine.board.wires(i) & (1 << direction)) != 0) {
+          t.checkExpect(engine.board.connected(i, direction), true);
+        }
+      }
+    }
+    t.checkExpect(ends, 2 * (engine.size() - 1));
+
+    // a board with a cycle or a wire off the board has no solution
+    PackedBoard ring = new PackedBoard(2, 2);
+    for (int i = 0; i < 4; i++) {
+      ring.cells[i] = PackedBoard.TOP | PackedBoard.RIGHT;
+    }
+    t.checkExpect(solver.solve(ring), null);
+    PackedBoard cross = new PackedBoard(2, 1);
+    cross.cells[0] = PackedBoard.WIRES;
+    cross.cells[1] = PackedBoard.LEFT;
+    t.checkExpect(solver.solve(cross), null);
+    PackedBoard single = new PackedBoard(1, 1);
+    t.checkExpect(Arrays.equals(solver.solve(single), new int[] { 0 }), true);
+  }
+
+  // tests ParallelBoardSolver
+  void testParallelBoardSolver(Tester t) {
+    ParallelBoardSolver solver = new ParallelBoardSolver(new ForkJoinPool(4));
+    t.checkExpect(solver.forkDepth, 3);
+    for (long seed = 0; seed < 10; seed++) {
+      BoardId id = new BoardId(seed, 5 + (int) seed * 3, 7);
+      GameEngine engine = new GameEngine(id);
+      engine.applyTurns(solver.solve(engine.board));
+      t.checkExpect(engine.isSolved(), true);
+      t.checkExpect(solver.cancel.get(), true);
+    }
+
+    // pruning alone decides the tiles whose neighbors allow only one turn
+    BoardSolver pruned = new BoardSolver();
+    PackedBoard corner = new BoardId(30, 20, 20).generate();
+    pruned.reset(corner);
+    t.checkExpect(solver.prune(pruned, 20), true);
+    t.checkExpect(solver.rounds > 1, true);
+    t.checkExpect(Integer.bitCount(pruned.domain[0]), 1);
+    t.checkExpect(BoardSolver.rotate(pruned.wires[0], pruned.turns()[0]),
+        corner.solvedWires(0));
+
+    // a board with no solution gives none
+    PackedBoard ring = new PackedBoard(2, 2);
+    for (int i = 0; i < 4; i++) {
+      ring.cells[i] = PackedBoard.TOP | PackedBoard.RIGHT;
+    }
+    t.checkExpect(solver.solve(ring), null);
+
+    // and a search limited to fewer choices than it needs gives up
+    BoardSolver limited = new BoardSolver();
+    PackedBoard board = new BoardId(1, 12, 12).generate();
+    t.checkExpect(limited.solve(board) != null, true);
+    t.checkExpect(limited.branches > 1, true);
+    limited.limit = 1;
+    t.checkExpect(limited.solve(board), null);
+    t.checkExpect(limited.branches, 1);
+    t.checkExpect(limited.gaveUp, true);
+
+    // a solve out of time gives up, while one with time left restarts with
+    // a larger limit until it finds a solution
+    ParallelBoardSolver timed = new ParallelBoardSolver(new ForkJoinPool(2));
+    timed.timeout = 1;
+    t.checkExpect(timed.solve(board), null);
+    t.checkExpect(timed.gaveUp.get(), true);
+    timed.timeout = 60L * 1000000000L;
+    timed.limit = 1;
+    GameEngine restarted = new GameEngine(new BoardId(1, 30, 30));
+    restarted.applyTurns(timed.solve(restarted.board));
+    t.checkExpect(restarted.isSolved(), true);
+    t.checkExpect(timed.restarts > 1, true);
+
+    // a solve that fails to prune forgets the last solve's answer
+    PackedBoard lone = new PackedBoard(1, 1);
+    lone.cells[0] = PackedBoard.TOP;
+    t.checkExpect(timed.solve(lone), null);
+    t.checkExpect(timed.found.get(), null);
+    t.checkExpect(timed.cancel.get(), false);
+    t.checkExpect(timed.restarts, 0);
+
+    // and both solvers solve the boards the speedup is timed on
+    t.checkExpect(solver.speedup(new BoardId(3, 30, 30)) > 0, true);
+  }
+
+  // tests HintEngine
+  void testHintEngine(Tester t) {
+    // following the hints solves the board
+    GameEngine engine = new GameEngine(new BoardId(22, 7, 6));
+    HintEngine hints = new HintEngine(engine);
+    int moves = 0;
+    for (int hint = hints.hint(); hint >= 0; hint = hints.hint()) {
+      t.checkExpect(hint & 3, engine.board.turnsToMatch(hint >> 2));
+      for (int turns = hint & 3; turns > 0; turns--) {
+        engine.rotate(hint >> 2);
+        moves++;
+      }
+    }
+    t.checkExpect(engine.isSolved(), true);
+    t.checkExpect(engine.unsolvedTile(), -1);
+    t.checkExpect(moves, new GameEngine(new BoardId(22, 7, 6)).turnsRemaining);
+
+    // the unsolved list keeps up with tiles leaving and coming back
+    engine.rotate(5);
+    engine.rotate(9);
+    boolean moved = engine.board.turnsToMatch(9) != 0;
+    t.checkExpect(engine.unsolvedTile(), moved ? 9 : engine.board.turnsToMatch(5) != 0 ? 5 : -1);
+    for (int turns = engine.board.turnsToMatch(9); turns > 0; turns--) {
+      engine.rotate(9);
+    }
+    t.checkExpect(engine.unsolvedTile(), engine.board.turnsToMatch(5) != 0 ? 5 : -1);
+
+    // a board packed from GamePieces has no solution kept, so one is
+    // searched for in the background and adopted by a later hint
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(23, 6, 6));
+    PackedBoard packed = new PackedBoard(world.board, 6, 6);
+    GameEngine unknown = new GameEngine(packed, world.id);
+    t.checkExpect(unknown.unsolvedTile(), -1);
+    t.checkExpect(unknown.isSolved(), false);
+    HintEngine background = new HintEngine(unknown, new ForkJoinPool(1));
+    t.checkExpect(background.hint(), -1);
+    background.search.join();
+    int hint = background.hint();
+    t.checkExpect(hint >= 0, true);
+    t.checkExpect(unknown.solvedTiles < 36, true);
+
+    // a board won with another wiring than the one kept needs no hint
+    GameEngine won = new GameEngine(new BoardId(22, 7, 6));
+    int[] other = new int[won.size()];
+    for (int i = 0; i < won.size(); i++) {
+      for (int turns = won.board.turnsToMatch(i); turns > 0; turns--) {
+        won.rotate(i);
+      }
+      other[i] = won.board.wires(i);
+    }
+    other[0] = BoardSolver.rotate(other[0], 1);
+    won.adoptSolution(other);
+    t.checkExpect(won.isSolved(), true);
+    t.checkExpect(won.unsolvedTile(), 0);
+    t.checkExpect(new HintEngine(won).hint(), -1);
+
+    // as does one wired as its solution but left dark in radius mode, with
+    // no search started for it
+    GameEngine dark = new GameEngine(new BoardId(22, 7, 6));
+    for (int i = 0; i < dark.size(); i++) {
+      for (int turns = dark.board.turnsToMatch(i); turns > 0; turns--) {
+        dark.rotate(i);
+      }
+    }
+    dark.propagator.radius = 1;
+    dark.propagator.propagate(dark.board);
+    t.checkExpect(dark.isSolved(), false);
+    t.checkExpect(dark.matchesSolution(), true);
+    HintEngine darkHints = new HintEngine(dark);
+    t.checkExpect(darkHints.hint(), -1);
+    t.checkExpect(darkHints.search, null);
+
+    // and the world shows a hint with the h key, until the next click
+    world.onKeyEvent("h");
+    t.checkExpect(world.hint, world.hints.hint());
+    world.makeScene();
+    world.onMouseClicked(new Posn(5, 5));
+    t.checkExpect(world.hint, -1);
+  }
+
+  // tests radius mode, where power reaches only the tiles within the radius
+  void testRadiusMode(Tester t) {
+    // the diameter found with two searches is the longest of all the
+    // searches from every tile
+    GameEngine engine = new GameEngine(new BoardId(24, 9, 7));
+    int[] distance = new int[engine.size()];
+    int[] queue = new int[engine.size()];
+    int longest = 0;
+    for (int i = 0; i < engine.size(); i++) {
+      longest = Math.max(longest, distance[engine.farthest(i, distance, queue)]);
+    }
+    t.checkExpect(engine.diameter, longest);
+    t.checkExpect(engine.radius(), longest / 2 + 1);
+
+    // once solved, radius mode lights just the tiles within the radius
+    for (int i = 0; i < engine.size(); i++) {
+      for (int turns = engine.board.turnsToMatch(i); turns > 0; turns--) {
+        engine.rotate(i);
+      }
+    }
+    t.checkExpect(engine.isSolved(), true);
+    engine.setRadiusMode(true);
+    t.checkExpect(engine.radiusMode(), true);
+    engine.farthest(engine.station(), distance, queue);
+    int near = 0;
+    for (int i = 0; i < engine.size(); i++) {
+      if (distance[i] <= engine.radius()) {
+        near++;
+      }
+      t.checkExpect(engine.board.isPowered(i), distance[i] <= engine.radius());
+    }
+    t.checkExpect(engine.poweredCount(), near);
+
+    // moves keep the lit tiles as a full propagation would light them
+    Random rand = new Random(24);
+    for (int k = 0; k < 60; k++) {
+      if (k % 4 == 0) {
+        engine.moveStation(rand.nextInt(4));
+      }
+      else {
+        engine.rotate(rand.nextInt(engine.size()));
+      }
+      PackedBoard copy = new PackedBoard(9, 7);
+      System.arraycopy(engine.board.cells, 0, copy.cells, 0, copy.cells.length);
+      IncrementalPropagator full = new IncrementalPropagator();
+      full.radius = engine.radius();
+      t.checkExpect(full.propagate(copy), engine.poweredCount());
+      t.checkExpect(Arrays.equals(copy.cells, engine.board.cells), true);
+    }
+
+    // even when a rotation closes a loop that gives lit tiles a shorter
+    // path to the station
+    Random wiring = new Random(26);
+    PackedBoard loops = new PackedBoard(7, 6);
+    for (int i = 0; i < loops.cells.length; i++) {
+      loops.cells[i] = (byte) (1 + wiring.nextInt(15));
+    }
+    loops.setStation(20, true);
+    IncrementalPropagator limited = new IncrementalPropagator();
+    limited.radius = 3;
+    limited.propagate(loops);
+    for (int k = 0; k < 200; k++) {
+      limited.rotate(loops, wiring.nextInt(loops.cells.length));
+      PackedBoard copy = new PackedBoard(7, 6);
+      System.arraycopy(loops.cells, 0, copy.cells, 0, copy.cells.length);
+      IncrementalPropagator full = new IncrementalPropagator();
+      full.radius = 3;
+      t.checkExpect(full.propagate(copy), limited.powered);
+      t.checkExpect(Arrays.equals(copy.cells, loops.cells), true);
+    }
+    engine.setRadiusMode(false);
+    t.checkExpect(engine.radiusMode(), false);
+
+    // the world keeps the radius, and r turns the limit on and off
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(25, 8, 8));
+    t.checkExpect(world.radius, world.engine.radius());
+    world.onKeyEvent("r");
+    t.checkExpect(world.engine.radiusMode(), true);
+    for (int i = 0; i < world.packed.cells.length; i++) {
+      t.checkExpect(world.nodes.get(i).powered, world.packed.isPowered(i));
+    }
+    world.onKeyEvent("r");
+    t.checkExpect(world.engine.radiusMode(), false);
+  }
+
+  // tests GameEngine.apply, which powers the board once per batch
+  void testApplyMoves(Tester t) {
+    // a batch leaves the board as the same moves made one at a time
+    GameEngine single = new GameEngine(new BoardId(26, 8, 7));
+    GameEngine batch = new GameEngine(new BoardId(26, 8, 7));
+    Random rand = new Random(26);
+    int[] moves = new int[200];
+    for (int k = 0; k < moves.length; k++) {
+      if (k % 5 == 0) {
+        moves[k] = GameEngine.stationMove(rand.nextInt(4));
+        single.moveStation(-1 - moves[k]);
+      }
+      else {
+        moves[k] = rand.nextInt(56);
+        single.rotate(moves[k]);
+      }
+    }
+    t.checkExpect(batch.apply(moves, moves.length), single.isSolved());
+    t.checkExpect(Arrays.equals(batch.snapshot(), single.snapshot()), true);
+    t.checkExpect(batch.poweredCount(), single.poweredCount());
+    t.checkExpect(batch.solvedTiles, single.solvedTiles);
+    t.checkExpect(batch.turnsRemaining, single.turnsRemaining);
+    t.checkExpect(batch.unsolvedTile(), single.unsolvedTile());
+
+    // only the first count of the moves are applied
+    t.checkExpect(batch.apply(moves, 0), single.isSolved());
+    t.checkExpect(Arrays.equals(batch.snapshot(), single.snapshot()), true);
+
+    // moves naming no tile or direction are skipped, wherever they are
+    int[] invalid = new int[] { 3, 56, -5, Integer.MAX_VALUE, Integer.MIN_VALUE, 4 };
+    batch.apply(invalid, invalid.length);
+    single.rotate(3);
+    single.rotate(4);
+    t.checkExpect(Arrays.equals(batch.snapshot(), single.snapshot()), true);
+    t.checkExpect(batch.poweredCount(), single.poweredCount());
+
+    // and the batch that undoes every rotation solves the board
+    GameEngine solving = new GameEngine(new BoardId(26, 8, 7));
+    int[] turns = new int[3 * solving.size()];
+    int count = 0;
+    for (int i = 0; i < solving.size(); i++) {
+      for (int k = solving.board.turnsToMatch(i); k > 0; k--) {
+        turns[count++] = i;
+      }
+    }
+    t.checkExpect(solving.apply(turns, count), true);
+    t.checkExpect(solving.matchesSolution(), true);
+  }
+
+  // tests that clicks and keys are coalesced until the next tick
+  void testInputCoalescing(Tester t) {
+    // four clicks on a tile cancel out before the tick plays them
+    BoardId id = new BoardId(27, 6, 5);
+    LightEmAllWorld world = new LightEmAllWorld(id);
+    byte[] before = world.engine.snapshot();
+    for (int k = 0; k < 4; k++) {
+      world.onMouseClicked(new Posn(70, 30));
+    }
+    world.onMouseClicked(new Posn(10, 10));
+    world.onMouseClicked(new Posn(10, 10));
+    t.checkExpect(world.clickedCount, 2);
+    t.checkExpect(world.turns[world.packed.index(0, 0)] & 3, 2);
+    t.checkExpect(Arrays.equals(world.packed.cells, before), true);
+    world.onTick();
+    t.checkExpect(world.pendingCount, 0);
+    t.checkExpect(world.clickedCount, 0);
+    GameEngine engine = new GameEngine(id);
+    engine.rotate(0);
+    engine.rotate(0);
+    t.checkExpect(Arrays.equals(world.packed.cells, engine.snapshot()), true);
+
+    // clicks keep their order with the station moves between them, and
+    // the view is brought up to date before drawing
+    for (int i = 0; i < world.packed.cells.length; i++) {
+      for (int turns = world.packed.turnsToSolve(i); turns > 0; turns--) {
+        world.onMouseClicked(new Posn((i / 5) * Constants.CELL_SIZE + 5,
+            (i % 5) * Constants.CELL_SIZE + 5));
+      }
+    }
+    world.onKeyEvent("down");
+    world.onKeyEvent("right");
+    world.onMouseClicked(new Posn(10, 10));
+    world.makeScene();
+    t.checkExpect(world.pendingCount, 0);
+    t.checkExpect(world.packed.turnsToSolve(0), 3);
+    t.checkExpect(world.engine.station() != 0, true);
+    t.checkExpect(world.packed.index(world.powerCol - 1, world.powerRow - 1),
+        world.engine.station());
+    for (int i = 0; i < world.packed.cells.length; i++) {
+      t.checkExpect(world.nodes.get(i).powered, world.packed.isPowered(i));
+      t.checkExpect(world.nodes.get(i).powerStation, world.packed.isStation(i));
+    }
+
+    // a coalesced click marks dirty only the cells its rotation changed
+    LightEmAllWorld large = new LightEmAllWorld(new BoardId(28, 60, 60));
+    for (int i = 0; i < large.packed.cells.length; i++) {
+      for (int turns = large.packed.turnsToSolve(i); turns > 0; turns--) {
+        large.engine.rotate(i);
+      }
+    }
+    large.makeScene();
+    t.checkExpect(large.packed.dirty.count, 0);
+    int leaf = large.packed.index(3, 3);
+    while (Integer.bitCount(large.packed.solvedWires(leaf)) != 1) {
+      leaf++;
+    }
+    Camera view = large.camera;
+    large.onMouseClicked(new Posn(view.screenX(leaf / 60) + 5, view.screenY(leaf % 60) + 5));
+    large.onTick();
+    t.checkExpect(large.packed.turnsToSolve(leaf), 3);
+    DirtyCells dirty = large.packed.dirty;
+    t.checkExpect(dirty.count >= 1, true);
+    t.checkExpect(dirty.count <= large.engine.changedCount(), true);
+    t.checkExpect(dirty.count < large.packed.cells.length, true);
+    for (int k = 0; k < dirty.count; k++) {
+      boolean logged = false;
+      for (int c = 0; c < large.engine.changedCount(); c++) {
+        logged = logged || large.engine.changed()[c] == dirty.cells[k];
+      }
+      t.checkExpect(logged, true);
+    }
+  }
+
+  // tests that a large world builds its GamePiece view only when asked
+  void testPieceView(Tester t) {
+    LightEmAllWorld world = new LightEmAllWorld(new BoardId(29, 300, 250));
+    t.checkExpect(world.board, null);
+    t.checkExpect(world.nodes, null);
+    world.onMouseClicked(new Posn(10, 10));
+    world.onKeyEvent("r");
+    world.makeScene();
+
+    // the view is built from the packed board, and kept up to date after
+    ArrayList<ArrayList<GamePiece>> pieces = world.pieces();
+    t.checkExpect(world.pieces() == pieces, true);
+    t.checkExpect(world.nodes.size(), 300 * 250);
+    world.onMouseClicked(new Posn(10, 10));
+    world.onTick();
+    boolean same = true;
+    for (int i = 0; i < world.packed.cells.length; i++) {
+      GamePiece piece = world.nodes.get(i);
+      same = same && piece.powered == world.packed.isPowered(i)
+          && piece.top == ((world.packed.wires(i) & PackedBoard.TOP) != 0);
+    }
+    t.checkExpect(same, true);
+    t.checkExpect(world.solution().size(), 300 * 250 - 1);
+  }
+
   // running the game
   void testGame(Tester t) {
     LightEmAllWorld world = new LightEmAllWorld(Constants.GAME_WIDTH, Constants.GAME_HEIGHT);